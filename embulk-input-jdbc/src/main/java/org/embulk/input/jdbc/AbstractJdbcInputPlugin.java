@@ -8,24 +8,49 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.net.UnknownHostException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.nio.file.Paths;
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.Optional;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 
 import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigDiff;
@@ -35,15 +60,19 @@ import org.embulk.config.TaskSource;
 import org.embulk.spi.BufferAllocator;
 import org.embulk.spi.Column;
 import org.embulk.spi.DataException;
+import org.embulk.spi.Page;
 import org.embulk.spi.PageBuilder;
 import org.embulk.spi.InputPlugin;
 import org.embulk.spi.PageOutput;
 import org.embulk.spi.Schema;
 import org.embulk.spi.Exec;
+import org.embulk.input.jdbc.getter.AbstractIncrementalHandler;
 import org.embulk.input.jdbc.getter.ColumnGetter;
 import org.embulk.input.jdbc.getter.ColumnGetterFactory;
 import org.embulk.input.jdbc.JdbcInputConnection.BatchSelect;
+import org.embulk.input.jdbc.JdbcInputConnection.PageBatchSelect;
 import org.embulk.input.jdbc.JdbcInputConnection.PreparedQuery;
+import org.embulk.input.jdbc.JdbcInputConnection.SelectCursor;
 import org.embulk.util.config.Config;
 import org.embulk.util.config.ConfigDefault;
 import org.embulk.util.config.ConfigMapper;
@@ -59,6 +88,11 @@ public abstract class AbstractJdbcInputPlugin
 {
     private static final Logger logger = LoggerFactory.getLogger(AbstractJdbcInputPlugin.class);
 
+    // rows sampled to compute quantiles of partition_type 'quantile' without statistics
+    private static final long QUANTILE_SAMPLE_ROWS = 100000;
+
+    private static final DateTimeFormatter PARTITION_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSS", ENGLISH);
+
     protected static final ConfigMapperFactory CONFIG_MAPPER_FACTORY =
             ConfigMapperFactory.builder().addDefaultModules().addModule(ZoneIdModule.withLegacyNames()).build();
 
@@ -109,6 +143,27 @@ public abstract class AbstractJdbcInputPlugin
         @ConfigDefault("null")
         public Optional<List<JsonNode>> getLastRecord();
 
+        @Config("keyset_pagination")
+        @ConfigDefault("false")
+        public boolean getKeysetPagination();
+
+        @Config("keyset_columns")
+        @ConfigDefault("[]")
+        public List<String> getKeysetColumns();
+        public void setKeysetColumns(List<String> columns);
+
+        @Config("retry_limit")
+        @ConfigDefault("0")
+        public int getRetryLimit();
+
+        @Config("retry_initial_wait_millis")
+        @ConfigDefault("1000")
+        public int getRetryInitialWaitMillis();
+
+        @Config("max_retry_wait_millis")
+        @ConfigDefault("60000")
+        public int getMaxRetryWaitMillis();
+
         // TODO limit_value is necessary to make sure repeated bulk load transactions
         //      don't a same record twice or miss records when the column
         //      specified at order_by parameter is not unique.
@@ -143,12 +198,78 @@ public abstract class AbstractJdbcInputPlugin
         @ConfigDefault("1800")
         public int getSocketTimeout();
 
+        @Config("connection_limit")
+        @ConfigDefault("null")
+        public Optional<Integer> getConnectionLimit();
+
         @Config("fetch_rows")
         @ConfigDefault("10000")
         // TODO set minimum number
         public int getFetchRows();
 
-        // TODO parallel execution using "partition_by" config
+        @Config("fetch_connections")
+        @ConfigDefault("1")
+        public int getFetchConnections();
+
+        @Config("async_output_pages")
+        @ConfigDefault("0")
+        public int getAsyncOutputPages();
+
+        // chunks are shared by the tasks through JdbcChunkQueue in the JVM of the transaction.
+        // So, this requires the local executor. Tasks on the other JVMs fail to find the chunks.
+        @Config("partition_chunks")
+        @ConfigDefault("1")
+        public int getPartitionChunks();
+
+        @Config("partition_by")
+        @ConfigDefault("null")
+        public Optional<String> getPartitionBy();
+        public void setPartitionBy(Optional<String> partitionBy);
+
+        @Config("partition_type")
+        @ConfigDefault("null")
+        public Optional<String> getPartitionType();
+        public void setPartitionType(Optional<String> partitionType);
+
+        @Config("partition_count")
+        @ConfigDefault("null")
+        public Optional<Integer> getPartitionCount();
+
+        @Config("partition_interval")
+        @ConfigDefault("null")
+        public Optional<String> getPartitionInterval();
+
+        @Config("partition_rows_per_task")
+        @ConfigDefault("1000000")
+        public long getPartitionRowsPerTask();
+
+        @Config("partitions")
+        @ConfigDefault("[]")
+        public List<String> getPartitionConditions();
+
+        @Config("partition_split_timeout")
+        @ConfigDefault("null")
+        public Optional<Integer> getPartitionSplitTimeout();
+
+        @Config("partition_split_min_range")
+        @ConfigDefault("1000")
+        public long getPartitionSplitMinRange();
+
+        @Config("targets")
+        @ConfigDefault("[]")
+        public List<JdbcTarget> getTargets();
+
+        @Config("replicas")
+        @ConfigDefault("[]")
+        public List<JdbcTarget> getReplicas();
+
+        @Config("replica_selection")
+        @ConfigDefault("\"round_robin\"")
+        public String getReplicaSelection();
+
+        @Config("replica_max_lag")
+        @ConfigDefault("null")
+        public Optional<Integer> getReplicaMaxLag();
 
         @Config("column_options")
         @ConfigDefault("{}")
@@ -182,6 +303,19 @@ public abstract class AbstractJdbcInputPlugin
 
         public List<Integer> getIncrementalColumnIndexes();
         public void setIncrementalColumnIndexes(List<Integer> indexes);
+
+        public List<Integer> getKeysetColumnIndexes();
+        public void setKeysetColumnIndexes(List<Integer> indexes);
+
+        public List<JdbcPartition> getPartitions();
+        public void setPartitions(List<JdbcPartition> partitions);
+
+        // incremental queries with last_record of each target
+        public List<PreparedQuery> getTargetQueries();
+        public void setTargetQueries(List<PreparedQuery> queries);
+
+        public Optional<String> getChunkQueueId();
+        public void setChunkQueueId(Optional<String> chunkQueueId);
     }
 
     // for subclasses to add @Config
@@ -209,8 +343,71 @@ public abstract class AbstractJdbcInputPlugin
             }
         }
 
+        if (task.getKeysetPagination()) {
+            if (task.getIncremental()) {
+                throw new ConfigException("keyset_pagination can't be used if incremental is true");
+            }
+            if (task.getOrderBy().isPresent()) {
+                throw new ConfigException("order_by option must not be set if keyset_pagination is true");
+            }
+            if (task.getPartitionSplitTimeout().isPresent()) {
+                throw new ConfigException("keyset_pagination can't be used with partition_split_timeout option");
+            }
+        }
+        else {
+            if (!task.getKeysetColumns().isEmpty()) {
+                throw new ConfigException("'keyset_pagination: true' must be set if keyset_columns is set");
+            }
+        }
+
+        if (task.getRetryLimit() < 0) {
+            throw new ConfigException("retry_limit must not be negative");
+        }
+        if (task.getRetryLimit() > 0) {
+            // the rows are read again after the last key that is already added to the pages
+            if (!task.getKeysetPagination()) {
+                throw new ConfigException("'keyset_pagination: true' must be set if retry_limit is set");
+            }
+            if (task.getRetryInitialWaitMillis() < 1) {
+                throw new ConfigException("retry_initial_wait_millis must be greater than 0");
+            }
+            if (task.getMaxRetryWaitMillis() < task.getRetryInitialWaitMillis()) {
+                throw new ConfigException("max_retry_wait_millis must not be less than retry_initial_wait_millis");
+            }
+        }
+
+        if (task.getConnectionLimit().isPresent() && task.getConnectionLimit().get() < 1) {
+            throw new ConfigException("connection_limit must be greater than 0");
+        }
+        if (task.getAsyncOutputPages() < 0) {
+            throw new ConfigException("async_output_pages must not be negative");
+        }
+
+        if (!task.getTargets().isEmpty() && !supportsTargets()) {
+            throw new ConfigException("targets option is not supported by this plugin");
+        }
+        if (!task.getReplicas().isEmpty()) {
+            if (!task.getTargets().isEmpty()) {
+                throw new ConfigException("replicas option can't be used with targets option");
+            }
+            // replicas are connected in the same way as targets
+            if (!supportsTargets()) {
+                throw new ConfigException("replicas option is not supported by this plugin");
+            }
+            JdbcReplicaSelector.validate(task.getReplicaSelection());
+        }
+        if (task.getReplicaMaxLag().isPresent()) {
+            if (task.getReplicas().isEmpty()) {
+                throw new ConfigException("replica_max_lag option requires replicas option");
+            }
+            if (!supportsReplicationLag()) {
+                throw new ConfigException("replica_max_lag option is not supported by this plugin");
+            }
+        }
+
         Schema schema;
-        try (JdbcInputConnection con = newConnection(task)) {
+        // the schema is probed only at the first target because all targets run the same query
+        try (JdbcInputConnection con = task.getTargets().isEmpty() ? newConnection(task) : newConnection(task, task.getTargets().get(0))) {
             con.showDriverVersion();
 
             if (task.getBeforeSetup().isPresent()) {
@@ -227,7 +424,130 @@ public abstract class AbstractJdbcInputPlugin
             throw new RuntimeException(ex);
         }
 
-        return buildNextConfigDiff(task, control.run(task.dump(), schema, 1));
+        int taskCount = Math.max(1, task.getTargets().size()) * getTasksPerTarget(task);
+        try (JdbcChunkQueue chunks = startChunkQueue(task, taskCount);
+                JdbcSnapshot snapshot = beginSnapshot(task, taskCount)) {
+            return buildNextConfigDiff(task, control.run(task.dump(), schema, taskCount));
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    // Returns null if the partitions are not split into chunks
+    private static JdbcChunkQueue startChunkQueue(PluginTask task, int taskCount)
+    {
+        if (task.getPartitionChunks() <= 1 || task.getPartitions().isEmpty()) {
+            task.setChunkQueueId(Optional.<String>empty());
+            return null;
+        }
+        JdbcChunkQueue chunks = JdbcChunkQueue.register(task.getPartitions().size(), taskCount);
+        task.setChunkQueueId(Optional.of(chunks.getId()));
+        return chunks;
+    }
+
+    // for subclasses to share a snapshot of the database between the tasks. Information to use
+    // the snapshot in the tasks needs to be set to the task.
+    protected JdbcSnapshot beginSnapshot(PluginTask task, int taskCount) throws SQLException
+    {
+        return () -> { };
+    }
+
+    // for subclasses to open JDBC connections within connection_limit. Connections beyond the
+    // limit wait for connect_timeout at most until other connections are closed.
+    protected Connection connect(PluginTask task, String url, Properties props,
+            JdbcConnectionLimiter.Connector connector) throws SQLException
+    {
+        if (!task.getConnectionLimit().isPresent()) {
+            return connector.connect();
+        }
+        return JdbcConnectionLimiter.connect(url, props.getProperty("user"), task.getConnectionLimit().get(),
+                task.getConnectTimeout(), connector);
+    }
+
+    // for subclasses to connect to a database of targets option
+    protected JdbcInputConnection newConnection(PluginTask task, JdbcTarget target) throws SQLException
+    {
+        throw new ConfigException("targets option is not supported by this plugin");
+    }
+
+    // for subclasses that override newConnection(PluginTask, JdbcTarget) to support targets and
+    // replicas options
+    protected boolean supportsTargets()
+    {
+        return false;
+    }
+
+    // for subclasses of which connections override JdbcInputConnection.getReplicationLagSeconds
+    protected boolean supportsReplicationLag()
+    {
+        return false;
+    }
+
+    // for subclasses to give a task a connection that reads the snapshot
+    protected JdbcInputConnection newTaskConnection(PluginTask task, int taskIndex) throws SQLException
+    {
+        if (!task.getTargets().isEmpty()) {
+            return newConnection(task, task.getTargets().get(taskIndex / getTasksPerTarget(task)));
+        }
+        if (!task.getReplicas().isEmpty()) {
+            return newReplicaConnection(task, taskIndex);
+        }
+        return newConnection(task);
+    }
+
+    // Tasks read replicas while transaction() reads the primary. Replicas that are not available
+    // or lag behind more than replica_max_lag are skipped.
+    private JdbcInputConnection newReplicaConnection(PluginTask task, int taskIndex) throws SQLException
+    {
+        for (JdbcTarget replica : JdbcReplicaSelector.order(task.getReplicas(), task.getReplicaSelection(), taskIndex)) {
+            JdbcReplicaSelector.markUsed(replica);
+            JdbcInputConnection con;
+            try {
+                con = newConnection(task, replica);
+            } catch (SQLException ex) {
+                logger.warn("Failed to connect to replica {}. Trying the next replica.", replica, ex);
+                continue;
+            }
+
+            if (task.getReplicaMaxLag().isPresent()) {
+                Optional<Long> lag;
+                try {
+                    lag = con.getReplicationLagSeconds();
+                } catch (SQLException | RuntimeException ex) {
+                    con.close();
+                    throw ex;
+                }
+                if (!JdbcReplicaSelector.isLagAcceptable(lag, task.getReplicaMaxLag().get())) {
+                    logger.warn("Replica {} is skipped because its replication lag is {} seconds.",
+                            replica, lag.isPresent() ? lag.get() : "unknown");
+                    con.close();
+                    continue;
+                }
+            }
+
+            logger.info("Task {} reads replica {}", taskIndex, replica);
+            return con;
+        }
+        logger.warn("No replicas are available. Task {} reads the primary database.", taskIndex);
+        return newConnection(task);
+    }
+
+    // Each target runs all partitions. Tasks of a target have consecutive task indexes.
+    protected static int getTasksPerTarget(PluginTask task)
+    {
+        int partitionsPerTask = task.getFetchConnections() * task.getPartitionChunks();
+        return Math.max(1, (task.getPartitions().size() + partitionsPerTask - 1) / partitionsPerTask);
+    }
+
+    // A task reads fetch_connections partitions at most at the same time
+    protected static List<JdbcPartition> getTaskPartitions(PluginTask task, int taskIndex)
+    {
+        if (task.getPartitions().isEmpty()) {
+            return Collections.emptyList();
+        }
+        int partitionsPerTask = task.getFetchConnections() * task.getPartitionChunks();
+        int first = (taskIndex % getTasksPerTarget(task)) * partitionsPerTask;
+        return task.getPartitions().subList(first, Math.min(first + partitionsPerTask, task.getPartitions().size()));
     }
 
     protected Schema setupTask(JdbcInputConnection con, PluginTask task) throws SQLException
@@ -283,37 +603,56 @@ public abstract class AbstractJdbcInputPlugin
                 incrementalColumns = primaryKeys;
             }
 
-            List<Integer> incrementalColumnIndexes = findIncrementalColumnIndexes(querySchema, incrementalColumns);
+            List<Integer> incrementalColumnIndexes = findColumnIndexes(querySchema, incrementalColumns, "incremental_columns");
             task.setIncrementalColumnIndexes(incrementalColumnIndexes);
 
-            List<JsonNode> lastRecord;
-            if (task.getLastRecord().isPresent()) {
-                lastRecord = task.getLastRecord().get();
-                if (lastRecord.size() != incrementalColumnIndexes.size()) {
-                    throw new ConfigException("Number of values set at last_record must be same with number of columns set at incremental_columns");
-                }
-            }
-            else {
-                lastRecord = null;
+            // targets share the query but each target has its own last_record
+            final ArrayList<PreparedQuery> targetQueries = new ArrayList<>();
+            for (JdbcTarget target : task.getTargets()) {
+                Optional<List<JsonNode>> lastRecord = target.getLastRecord().isPresent() ? target.getLastRecord() : task.getLastRecord();
+                targetQueries.add(buildIncrementalQuery(con, task, rawQuery, querySchema, lastRecord));
             }
+            task.setTargetQueries(Collections.unmodifiableList(targetQueries));
 
-            if (task.getQuery().isPresent()) {
-                preparedQuery = con.wrapIncrementalQuery(rawQuery, querySchema, incrementalColumns, lastRecord, task.getUseRawQueryWithIncremental());
+            if (targetQueries.isEmpty()) {
+                preparedQuery = buildIncrementalQuery(con, task, rawQuery, querySchema, task.getLastRecord());
             }
             else {
-                preparedQuery = con.rebuildIncrementalQuery(
-                        task.getTable().get(), task.getSelect(),
-                        task.getWhere(),
-                        querySchema, incrementalColumns, lastRecord);
+                preparedQuery = targetQueries.get(0);
             }
         }
         else {
             task.setIncrementalColumnIndexes(Collections.<Integer>emptyList());
             preparedQuery = new PreparedQuery(rawQuery, Collections.<JdbcLiteral>emptyList());
+            task.setTargetQueries(Collections.<PreparedQuery>emptyList());
         }
 
         task.setBuiltQuery(preparedQuery);
 
+        if (task.getKeysetPagination()) {
+            List<String> keysetColumns = task.getKeysetColumns();
+            if (keysetColumns.isEmpty()) {
+                if (!task.getTable().isPresent()) {
+                    throw new ConfigException("keyset_columns option must be set if keyset_pagination is true and custom query option is set");
+                }
+                List<String> primaryKeys = con.getPrimaryKeys(task.getTable().get());
+                if (primaryKeys.isEmpty()) {
+                    throw new ConfigException(String.format(ENGLISH,
+                                "Primary key is not available at the table '%s'. keyset_columns option must be set",
+                                task.getTable().get()));
+                }
+                logger.info("Using primary keys as keyset_columns: {}", primaryKeys);
+                task.setKeysetColumns(primaryKeys);
+                keysetColumns = primaryKeys;
+            }
+            task.setKeysetColumnIndexes(findColumnIndexes(querySchema, keysetColumns, "keyset_columns"));
+        }
+        else {
+            task.setKeysetColumnIndexes(Collections.<Integer>emptyList());
+        }
+
+        task.setPartitions(setupPartitions(con, task, querySchema));
+
         // validate column_options
         newColumnGetters(con, task, querySchema, null);
 
@@ -329,188 +668,1045 @@ public abstract class AbstractJdbcInputPlugin
         return new Schema(Collections.unmodifiableList(columns));
     }
 
-    private String normalizeTableNameCase(JdbcInputConnection con, String tableName)
-        throws SQLException
+    private PreparedQuery buildIncrementalQuery(JdbcInputConnection con, PluginTask task, String rawQuery,
+            JdbcSchema querySchema, Optional<List<JsonNode>> lastRecordOption) throws SQLException
     {
-        if (con.tableExists(tableName)) {
-            return tableName;
-        } else {
-            String upperTableName = tableName.toUpperCase();
-            String lowerTableName = tableName.toLowerCase();
-            boolean upperExists = con.tableExists(upperTableName);
-            boolean lowerExists = con.tableExists(lowerTableName);
-            if (upperExists && lowerExists) {
-                    throw new ConfigException(String.format("Cannot specify table '%s' because both '%s' and '%s' exist.",
-                            tableName, upperTableName, lowerTableName));
-            } else if (upperExists) {
-                return upperTableName;
-            } else if (lowerExists) {
-                return lowerTableName;
-            } else {
-                // fallback to the given table name. this may throw error later at getSchemaOfQuery
-                return tableName;
+        List<JsonNode> lastRecord;
+        if (lastRecordOption.isPresent()) {
+            lastRecord = lastRecordOption.get();
+            if (lastRecord.size() != task.getIncrementalColumnIndexes().size()) {
+                throw new ConfigException("Number of values set at last_record must be same with number of columns set at incremental_columns");
             }
         }
+        else if (task.getUseRawQueryWithIncremental()) {
+            throw new ConfigException("'last_record' is required when 'use_raw_query_with_incremental' is set to true");
+        }
+        else {
+            lastRecord = null;
+        }
+
+        if (task.getQuery().isPresent()) {
+            return con.wrapIncrementalQuery(rawQuery, querySchema, task.getIncrementalColumns(), lastRecord, task.getUseRawQueryWithIncremental());
+        }
+        else {
+            return con.rebuildIncrementalQuery(
+                    task.getTable().get(), task.getSelect(),
+                    task.getWhere(),
+                    querySchema, task.getIncrementalColumns(), lastRecord);
+        }
     }
 
-    private List<Integer> findIncrementalColumnIndexes(JdbcSchema schema, List<String> incrementalColumns)
-        throws SQLException
+    protected List<JdbcPartition> setupPartitions(JdbcInputConnection con, PluginTask task, JdbcSchema querySchema)
+            throws SQLException
     {
-        final ArrayList<Integer> indices = new ArrayList<>();
-        for (String name : incrementalColumns) {
-            Optional<Integer> index = schema.findColumn(name);
-            if (index.isPresent()) {
-                indices.add(index.get());
+        if (!task.getPartitionBy().isPresent() && !task.getPartitionType().isPresent() && task.getPartitionConditions().isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        if (task.getFetchConnections() < 1) {
+            throw new ConfigException("fetch_connections must be greater than 0");
+        }
+        if (task.getPartitionChunks() < 1) {
+            throw new ConfigException("partition_chunks must be greater than 0");
+        }
+        if (task.getPartitionChunks() > 1) {
+            if (task.getFetchConnections() > 1) {
+                throw new ConfigException("partition_chunks and fetch_connections can't be used together");
             }
-            else {
-                throw new ConfigException(String.format(ENGLISH,
-                        "Column name '%s' is in incremental_columns option does not exist",
-                        name));
+            if (!task.getTargets().isEmpty()) {
+                throw new ConfigException("partition_chunks can't be used with targets option");
             }
         }
-        return Collections.unmodifiableList(indices);
-    }
-
-    private String getRawQuery(PluginTask task, JdbcInputConnection con) throws SQLException
-    {
-        if (task.getQuery().isPresent()) {
-            if (task.getTable().isPresent() || task.getSelect().isPresent() ||
-                    task.getWhere().isPresent() || task.getOrderBy().isPresent()) {
-                throw new ConfigException("'table', 'select', 'where' and 'order_by' parameters are unnecessary if 'query' parameter is set.");
-            } else if (task.getUseRawQueryWithIncremental()) {
-                String rawQuery = task.getQuery().get();
-                for (String columnName : task.getIncrementalColumns()) {
-                    if (!rawQuery.contains(":" + columnName)) {
-                        throw new ConfigException(String.format("Column \":%s\" doesn't exist in query string", columnName));
-                    }
-                }
-                if (!task.getLastRecord().isPresent()) {
-                    throw new ConfigException("'last_record' is required when 'use_raw_query_with_incremental' is set to true");
-                }
-                if (task.getLastRecord().get().size() != task.getIncrementalColumns().size()) {
-                    throw new ConfigException("size of 'last_record' is different from of 'incremental_columns'");
+        if (task.getIncremental()) {
+            // each task reads rows after last_record in its partition
+            if (!task.getTable().isPresent()) {
+                throw new ConfigException("table option is required to set partition_by, partition_type or partitions option if incremental is true");
+            }
+            if (!task.getTargets().isEmpty()) {
+                throw new ConfigException("partition_by, partition_type and partitions options can't be used with targets option if incremental is true");
+            }
+            if (task.getFetchConnections() > 1 || task.getPartitionChunks() > 1 || task.getPartitionSplitTimeout().isPresent()) {
+                throw new ConfigException("fetch_connections, partition_chunks and partition_split_timeout options can't be used if incremental is true");
+            }
+            // last records of the partitions are compared in Java, which doesn't know the collation of strings
+            for (int i = 0; i < task.getIncrementalColumnIndexes().size(); i++) {
+                JdbcColumn column = querySchema.getColumn(task.getIncrementalColumnIndexes().get(i));
+                if (!isComparableLastRecordType(column.getSqlType())) {
+                    throw new ConfigException(String.format(ENGLISH,
+                            "incremental_columns must be numbers or timestamps if partition_by, partition_type or partitions option is set, but column '%s' is '%s'",
+                            column.getName(), column.getTypeName()));
                 }
-            } else if (!task.getUseRawQueryWithIncremental() && (!task.getIncrementalColumns().isEmpty() || task.getLastRecord().isPresent())) {
-                throw new ConfigException("'incremental_columns' and 'last_record' parameters are not supported if 'query' parameter is set and 'use_raw_query_with_incremental' is set to false.");
             }
-            return task.getQuery().get();
-        } else if (task.getTable().isPresent()) {
-            return con.buildSelectQuery(task.getTable().get(), task.getSelect(),
-                    task.getWhere(), task.getOrderBy());
-        } else {
-            throw new ConfigException("'table' or 'query' parameter is required");
         }
-    }
+        if (task.getUseRawQueryWithIncremental()) {
+            throw new ConfigException("partition_by, partition_type and partitions options must not be set if use_raw_query_with_incremental is true");
+        }
 
-    @Override
-    public ConfigDiff resume(TaskSource taskSource,
-            Schema schema, int taskCount,
-            InputPlugin.Control control)
-    {
-        final PluginTask task = TASK_MAPPER.map(taskSource, this.getTaskClass());
+        if (!task.getPartitionConditions().isEmpty()) {
+            if (task.getPartitionBy().isPresent() || task.getPartitionType().isPresent()) {
+                throw new ConfigException("partition_by and partition_type options must not be set if partitions option is set");
+            }
+            // partitions are used as they are even if there is only one, because it also filters the rows
+            final ArrayList<JdbcPartition> partitions = new ArrayList<>();
+            for (String condition : task.getPartitionConditions()) {
+                partitions.add(new JdbcPartition(condition, Collections.<JdbcLiteral>emptyList()));
+            }
+            logger.info("Partitioning into {} tasks: {}", partitions.size(), partitions);
+            checkPartitionSplit(con, task, partitions);
+            return Collections.unmodifiableList(partitions);
+        }
 
-        // TODO when parallel execution is implemented and enabled, (maybe) order_by
-        //      is necessary to resume. transaction() gets the range of order_by
-        //      colum and set it to WHERE condition to make the operation deterministic
+        int partitionCount = task.getPartitionCount().orElse(Runtime.getRuntime().availableProcessors());
+        if (partitionCount < 1) {
+            throw new ConfigException("partition_count must be greater than 0");
+        }
 
-        return buildNextConfigDiff(task, control.run(taskSource, schema, taskCount));
-    }
+        String partitionType = task.getPartitionType().orElse("range");
+        if (task.getPartitionInterval().isPresent() && !partitionType.equals("time") && !partitionType.equals("auto")) {
+            throw new ConfigException("partition_interval option must not be set unless partition_type is 'time' or 'auto'");
+        }
 
-    public ConfigDiff guess(ConfigSource config)
-    {
-        return CONFIG_MAPPER_FACTORY.newConfigDiff();
+        // each task reads fetch_connections partitions or partition_chunks chunks
+        List<JdbcPartition> partitions = buildPartitions(con, task, querySchema, partitionType,
+                partitionCount * task.getFetchConnections() * task.getPartitionChunks());
+        if (partitions.size() <= 1) {
+            logger.info("Partitioning is disabled because the rows can't be split into multiple partitions.");
+            return Collections.emptyList();
+        }
+        if (task.getIncremental() && partitions.get(0).getTablePartition().isPresent()) {
+            throw new ConfigException(String.format(ENGLISH,
+                    "partition_type '%s' can't be used if incremental is true", partitionType));
+        }
+        logger.info("Partitioning into {} tasks: {}", partitions.size(), partitions);
+        checkPartitionSplit(con, task, partitions);
+        return partitions;
     }
 
-    protected ConfigDiff buildNextConfigDiff(PluginTask task, List<TaskReport> reports)
+    // Rows of a range are read in the order of the key to resume after the last read row when
+    // the range is split. So, the key must be unique.
+    private void checkPartitionSplit(JdbcInputConnection con, PluginTask task, List<JdbcPartition> partitions)
+            throws SQLException
     {
-        final ConfigDiff next = CONFIG_MAPPER_FACTORY.newConfigDiff();
-        if (reports.size() > 0 && reports.get(0).has("last_record")) {
-            // |reports| are from embulk-core, then their backend is Jackson on the embulk-core side.
-            // To render |JsonNode| (that is on the plugin side) from |reports|, they need to be rebuilt.
-            final TaskReport report = CONFIG_MAPPER_FACTORY.rebuildTaskReport(reports.get(0));
-            next.set("last_record", report.get(JsonNode.class, "last_record"));
-        } else if (task.getLastRecord().isPresent()) {
-            next.set("last_record", task.getLastRecord().get());
+        if (!task.getPartitionSplitTimeout().isPresent()) {
+            return;
+        }
+        if (task.getPartitionSplitTimeout().get() < 1) {
+            throw new ConfigException("partition_split_timeout must be greater than 0");
+        }
+        if (task.getPartitionSplitMinRange() < 1) {
+            throw new ConfigException("partition_split_min_range must be greater than 0");
+        }
+        if (!partitions.get(0).getRange().isPresent()) {
+            throw new ConfigException("partition_split_timeout option requires partition_type 'range' or 'quantile'");
+        }
+        if (!task.getTable().isPresent()) {
+            throw new ConfigException("table option is required if partition_split_timeout option is set");
+        }
+        if (task.getOrderBy().isPresent()) {
+            throw new ConfigException("order_by option must not be set if partition_split_timeout option is set");
+        }
+        if (task.getPartitionChunks() > 1) {
+            throw new ConfigException("partition_split_timeout and partition_chunks can't be used together");
+        }
+        List<String> primaryKeys = con.getPrimaryKeys(task.getTable().get());
+        if (primaryKeys.size() != 1 || !primaryKeys.get(0).equalsIgnoreCase(task.getPartitionBy().get())) {
+            throw new ConfigException(String.format(ENGLISH,
+                    "partition_split_timeout option requires the column set at partition_by option to be the primary key of the table '%s'",
+                    task.getTable().get()));
         }
-        return next;
     }
 
-    @Override
-    public void cleanup(TaskSource taskSource,
-            Schema schema, int taskCount,
-            List<TaskReport> successTaskReports)
+    // for subclasses to add database-specific partition_type
+    protected List<JdbcPartition> buildPartitions(JdbcInputConnection con, PluginTask task, JdbcSchema querySchema,
+            String partitionType, int partitionCount) throws SQLException
     {
-        // do nothing
+        switch (partitionType) {
+        case "range":
+            return buildRangePartitions(con, task, querySchema, partitionCount);
+        case "hash":
+            return buildHashPartitions(con, task, querySchema, partitionCount);
+        case "time":
+            return buildTimePartitions(con, task, querySchema, partitionCount);
+        case "native":
+            return buildTablePartitions(con, task);
+        case "quantile":
+            return buildQuantilePartitions(con, task, querySchema, partitionCount);
+        case "auto":
+            return buildAutoPartitions(con, task, querySchema, partitionCount);
+        default:
+            throw new ConfigException(String.format(ENGLISH,
+                    "Unknown partition_type '%s'", partitionType));
+        }
     }
 
-    private static class LastRecordStore
+    // Chooses partition_by from indexed columns, partition_type from the type of the column and
+    // partition_count from the estimated number of rows. Then, builds partitions with them.
+    // partitionCount is used unless the number of rows is estimated. It's already multiplied by
+    // the partitions that a task reads, and so is the estimated count.
+    private List<JdbcPartition> buildAutoPartitions(JdbcInputConnection con, PluginTask task, JdbcSchema querySchema,
+            int partitionCount) throws SQLException
     {
-        private final List<Integer> columnIndexes;
-        private final JsonNode[] lastValues;
-        private final List<String> columnNames;
-
-        public LastRecordStore(List<Integer> columnIndexes, List<String> columnNames)
-        {
-            this.columnIndexes = columnIndexes;
-            this.lastValues = new JsonNode[columnIndexes.size()];
-            this.columnNames = columnNames;
+        if (!task.getTable().isPresent()) {
+            throw new ConfigException("table option is required if partition_type is 'auto'");
+        }
+        if (task.getPartitionRowsPerTask() < 1) {
+            throw new ConfigException("partition_rows_per_task must be greater than 0");
         }
 
-        public void accept(List<ColumnGetter> getters)
-            throws SQLException
-        {
-            for (int i = 0; i < columnIndexes.size(); i++) {
-                lastValues[i] = getters.get(columnIndexes.get(i)).encodeToJson();
+        Optional<JdbcColumn> column;
+        if (task.getPartitionBy().isPresent()) {
+            column = Optional.of(querySchema.getColumn(findPartitionColumnIndex(querySchema, task.getPartitionBy().get())));
+        }
+        else {
+            column = findAutoPartitionColumn(con, task, querySchema);
+            if (!column.isPresent()) {
+                logger.info("Partitioning is disabled because no indexed integer or timestamp columns are found.");
+                return Collections.emptyList();
             }
         }
-
+        String partitionType = isIntegerType(column.get().getSqlType()) ? "range" : "time";
+
+        if (!task.getPartitionCount().isPresent()) {
+            Optional<Long> rows = con.estimateRowCount(task.getTable().get());
+            if (rows.isPresent()) {
+                long tasks = (rows.get() + task.getPartitionRowsPerTask() - 1) / task.getPartitionRowsPerTask();
+                long count = Math.max(1, tasks) * task.getFetchConnections() * task.getPartitionChunks();
+                partitionCount = (int) Math.min(Integer.MAX_VALUE, count);
+            }
+            logger.info("Estimated number of rows is {}", rows.isPresent() ? rows.get() : "not available");
+        }
+
+        logger.info("Using partition_by: {}, partition_type: {}, partition_count: {}",
+                column.get().getName(), partitionType, partitionCount);
+        task.setPartitionBy(Optional.of(column.get().getName()));
+        task.setPartitionType(Optional.of(partitionType));
+        return buildPartitions(con, task, querySchema, partitionType, partitionCount);
+    }
+
+    // Integer columns are preferred to timestamp columns because their ranges are split evenly.
+    private Optional<JdbcColumn> findAutoPartitionColumn(JdbcInputConnection con, PluginTask task, JdbcSchema querySchema)
+            throws SQLException
+    {
+        final ArrayList<JdbcColumn> timestampColumns = new ArrayList<>();
+        for (String columnName : con.getIndexedColumns(task.getTable().get())) {
+            Optional<Integer> index = querySchema.findColumn(columnName);
+            if (!index.isPresent()) {
+                continue;
+            }
+            JdbcColumn column = querySchema.getColumn(index.get());
+            if (isIntegerType(column.getSqlType())) {
+                return Optional.of(column);
+            }
+            if (column.getSqlType() == Types.TIMESTAMP || column.getSqlType() == Types.TIMESTAMP_WITH_TIMEZONE) {
+                timestampColumns.add(column);
+            }
+        }
+
+        for (JdbcColumn column : timestampColumns) {
+            // partition_type 'time' needs a getter that can bind the bounds. Getters depend on the options.
+            task.setPartitionBy(Optional.of(column.getName()));
+            task.setPartitionType(Optional.of("time"));
+            try {
+                int index = querySchema.findColumn(column.getName()).get();
+                if (newColumnGetters(con, task, querySchema, null).get(index) instanceof AbstractIncrementalHandler) {
+                    return Optional.of(column);
+                }
+            } catch (ConfigException ex) {
+                logger.info("Column '{}' can't be used to split the rows: {}", column.getName(), ex.getMessage());
+            }
+        }
+        task.setPartitionBy(Optional.<String>empty());
+        task.setPartitionType(Optional.of("auto"));
+        return Optional.empty();
+    }
+
+    private List<JdbcPartition> buildRangePartitions(JdbcInputConnection con, PluginTask task, JdbcSchema querySchema,
+            int partitionCount) throws SQLException
+    {
+        int columnIndex = findPartitionColumnIndex(querySchema, getPartitionBy(task));
+        JdbcColumn column = querySchema.getColumn(columnIndex);
+        checkIntegerPartitionColumn(column);
+
+        String quotedColumnName = con.quoteIdentifierString(column.getName());
+        List<Object> range = con.selectSingleRow(buildPartitionProbeQuery(con, task,
+                    String.format(ENGLISH, "MIN(%s), MAX(%s)", quotedColumnName, quotedColumnName)));
+        if (range.isEmpty() || range.get(0) == null || range.get(1) == null) {
+            return Collections.emptyList();
+        }
+
+        BigInteger min = toBigInteger(range.get(0));
+        Optional<JsonNode> lastValue = getIncrementalLowerBound(task, column.getName());
+        if (lastValue.isPresent() && lastValue.get().isIntegralNumber()) {
+            min = min.max(lastValue.get().bigIntegerValue().add(BigInteger.ONE));
+        }
+        BigInteger max = toBigInteger(range.get(1));
+        if (min.compareTo(max) > 0) {
+            return Collections.emptyList();
+        }
+        // bounds are bound as BIGINT. e.g. BIGINT UNSIGNED of MySQL may exceed the range.
+        checkPartitionBound(column.getName(), toBigInteger(range.get(0)));
+        checkPartitionBound(column.getName(), max);
+
+        return buildRangePartitions(quotedColumnName, columnIndex, min, max, partitionCount);
+    }
+
+    private List<JdbcPartition> buildQuantilePartitions(JdbcInputConnection con, PluginTask task, JdbcSchema querySchema,
+            int partitionCount) throws SQLException
+    {
+        int columnIndex = findPartitionColumnIndex(querySchema, getPartitionBy(task));
+        JdbcColumn column = querySchema.getColumn(columnIndex);
+        checkIntegerPartitionColumn(column);
+
+        List<Long> values = Collections.emptyList();
+        if (task.getTable().isPresent()) {
+            values = con.estimatePartitionBounds(task.getTable().get(), column.getName(), partitionCount);
+        }
+        if (values.isEmpty()) {
+            values = sampleQuantiles(con, task, column.getName(), partitionCount);
+        }
+        if (values.isEmpty()) {
+            logger.info("Quantiles of column '{}' are not available. Splitting the range of the values instead.", column.getName());
+            return buildRangePartitions(con, task, querySchema, partitionCount);
+        }
+
+        // bounds must be unique and ascending. values may be duplicated if a value spans buckets.
+        final ArrayList<JsonNode> bounds = new ArrayList<>();
+        Long last = null;
+        for (Long value : values) {
+            if (last == null || last < value) {
+                bounds.add(JsonNodeFactory.instance.numberNode(value));
+                last = value;
+            }
+        }
+        return buildPartitionsFromBounds(con.quoteIdentifierString(column.getName()), columnIndex, bounds);
+    }
+
+    // Computes the bounds from a sample of QUANTILE_SAMPLE_ROWS rows if the database can sample
+    // the table. Returns an empty list otherwise.
+    private List<Long> sampleQuantiles(JdbcInputConnection con, PluginTask task, String columnName,
+            int partitionCount) throws SQLException
+    {
+        if (!task.getTable().isPresent()) {
+            return Collections.emptyList();
+        }
+        Optional<Long> rows = con.estimateRowCount(task.getTable().get());
+        if (!rows.isPresent() || rows.get() <= 0) {
+            return Collections.emptyList();
+        }
+        double samplePercent = Math.min(100.0, 100.0 * QUANTILE_SAMPLE_ROWS / rows.get());
+        Optional<String> query = con.buildQuantileSampleQuery(task.getTable().get(), task.getWhere(),
+                columnName, partitionCount, samplePercent);
+        if (!query.isPresent()) {
+            return Collections.emptyList();
+        }
+
+        logger.info("Statistics of column '{}' are not available. Computing quantiles from a sample of the rows.", columnName);
+        final ArrayList<Long> minimums = new ArrayList<>();
+        for (Object value : con.selectSingleColumn(query.get())) {
+            minimums.add(checkPartitionBound(columnName, toBigInteger(value)));
+        }
+        // the minimum value of the first bucket isn't a bound
+        return minimums.isEmpty() ? minimums : minimums.subList(1, minimums.size());
+    }
+
+    private List<JdbcPartition> buildHashPartitions(JdbcInputConnection con, PluginTask task, JdbcSchema querySchema,
+            int partitionCount) throws SQLException
+    {
+        int columnIndex = findPartitionColumnIndex(querySchema, getPartitionBy(task));
+        String columnName = querySchema.getColumnName(columnIndex);
+
+        final ArrayList<JdbcPartition> partitions = new ArrayList<>();
+        for (int i = 0; i < partitionCount; i++) {
+            String condition = con.buildHashPartitionCondition(columnName, partitionCount, i);
+            if (i == 0) {
+                // hash of NULL is NULL
+                condition = "(" + condition + ") OR " + con.quoteIdentifierString(columnName) + " IS NULL";
+            }
+            partitions.add(new JdbcPartition(condition, Collections.<JdbcLiteral>emptyList()));
+        }
+        return Collections.unmodifiableList(partitions);
+    }
+
+    private List<JdbcPartition> buildTimePartitions(JdbcInputConnection con, PluginTask task, JdbcSchema querySchema,
+            int partitionCount) throws SQLException
+    {
+        int columnIndex = findPartitionColumnIndex(querySchema, getPartitionBy(task));
+        JdbcColumn column = querySchema.getColumn(columnIndex);
+
+        // The bounds are encoded and decoded by the same getter with incremental_columns
+        // so that time zones are handled in the same way with last_record.
+        ColumnGetter getter = newColumnGetters(con, task, querySchema, null).get(columnIndex);
+        if (!(getter instanceof AbstractIncrementalHandler)) {
+            throw new ConfigException(String.format(ENGLISH,
+                    "Column '%s' set at partition_by option must be a timestamp type if partition_type is 'time' but got %s",
+                    column.getName(), column.getTypeName()));
+        }
+
+        String quotedColumnName = con.quoteIdentifierString(column.getName());
+        List<JsonNode> range = con.selectSingleRowAsJson(buildPartitionProbeQuery(con, task,
+                    String.format(ENGLISH, "MIN(%s), MAX(%s)", quotedColumnName, quotedColumnName)),
+                (AbstractIncrementalHandler) getter);
+        if (range.isEmpty() || range.get(0) == null || range.get(1) == null) {
+            return Collections.emptyList();
+        }
+
+        // values without time zone are compared as they are. values with time zone are
+        // split at boundaries of hours, days or months in default_timezone.
+        boolean withTimeZone = !isTimeWithoutTimeZone(range.get(0).asText());
+        ZonedDateTime min = parsePartitionTime(range.get(0).asText(), withTimeZone, task.getDefaultTimeZone());
+        ZonedDateTime max = parsePartitionTime(range.get(1).asText(), withTimeZone, task.getDefaultTimeZone());
+        Optional<JsonNode> lastValue = getIncrementalLowerBound(task, column.getName());
+        if (lastValue.isPresent()) {
+            ZonedDateTime last;
+            try {
+                last = parsePartitionTime(lastValue.get().asText(), withTimeZone, task.getDefaultTimeZone());
+            } catch (DateTimeException ex) {
+                throw new ConfigException(String.format(ENGLISH,
+                        "Value '%s' set at last_record option is not a timestamp of column '%s'",
+                        lastValue.get().asText(), column.getName()), ex);
+            }
+            if (!last.isBefore(max)) {
+                return Collections.emptyList();
+            }
+            if (last.isAfter(min)) {
+                min = last;
+            }
+        }
+
+        List<ZonedDateTime> times;
+        if (task.getPartitionInterval().isPresent()) {
+            times = buildIntervalTimeBounds(min, max, task.getPartitionInterval().get());
+        }
+        else {
+            times = buildEvenTimeBounds(min, max, partitionCount);
+        }
+
+        final ArrayList<JsonNode> bounds = new ArrayList<>();
+        for (ZonedDateTime time : times) {
+            bounds.add(JsonNodeFactory.instance.textNode(formatPartitionTime(time, withTimeZone)));
+        }
+        return buildPartitionsFromBounds(quotedColumnName, columnIndex, bounds);
+    }
+
+    // Incremental loading reads only rows after last_record. If partition_by is the first column of
+    // incremental_columns, the rows are split from last_record instead of the minimum value.
+    private static Optional<JsonNode> getIncrementalLowerBound(PluginTask task, String columnName)
+    {
+        if (!task.getIncremental() || !task.getLastRecord().isPresent()
+                || task.getIncrementalColumns().isEmpty() || !task.getIncrementalColumns().get(0).equalsIgnoreCase(columnName)) {
+            return Optional.empty();
+        }
+        return Optional.of(task.getLastRecord().get().get(0));
+    }
+
+    private static List<ZonedDateTime> buildIntervalTimeBounds(ZonedDateTime min, ZonedDateTime max, String interval)
+    {
+        ZonedDateTime start;
+        ChronoUnit unit;
+        switch (interval) {
+        case "hour":
+            start = min.truncatedTo(ChronoUnit.HOURS);
+            unit = ChronoUnit.HOURS;
+            break;
+        case "day":
+            start = min.truncatedTo(ChronoUnit.DAYS);
+            unit = ChronoUnit.DAYS;
+            break;
+        case "month":
+            start = min.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+            unit = ChronoUnit.MONTHS;
+            break;
+        default:
+            throw new ConfigException(String.format(ENGLISH,
+                    "Unknown partition_interval '%s'. It must be 'hour', 'day' or 'month'", interval));
+        }
+
+        final ArrayList<ZonedDateTime> bounds = new ArrayList<>();
+        for (long i = 1; ; i++) {
+            ZonedDateTime bound = start.plus(i, unit);
+            if (bound.isAfter(max)) {
+                break;
+            }
+            bounds.add(bound);
+        }
+        return Collections.unmodifiableList(bounds);
+    }
+
+    private static List<ZonedDateTime> buildEvenTimeBounds(ZonedDateTime min, ZonedDateTime max, int partitionCount)
+    {
+        BigInteger width = BigInteger.valueOf(ChronoUnit.MICROS.between(min, max));
+        int count = width.min(BigInteger.valueOf(partitionCount)).intValue();
+
+        final ArrayList<ZonedDateTime> bounds = new ArrayList<>();
+        for (int i = 1; i < count; i++) {
+            long micros = width.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(count)).longValue();
+            bounds.add(min.plus(micros, ChronoUnit.MICROS));
+        }
+        return Collections.unmodifiableList(bounds);
+    }
+
+    private static boolean isTimeWithoutTimeZone(String text)
+    {
+        return text.matches("\\d+-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}\\.\\d{6}");
+    }
+
+    private static ZonedDateTime parsePartitionTime(String text, boolean withTimeZone, ZoneId timeZone)
+    {
+        if (withTimeZone) {
+            return Instant.parse(text).atZone(timeZone);
+        }
+        return LocalDateTime.parse(text).atZone(ZoneOffset.UTC);
+    }
+
+    private static String formatPartitionTime(ZonedDateTime time, boolean withTimeZone)
+    {
+        if (withTimeZone) {
+            return PARTITION_TIME_FORMATTER.format(time.withZoneSameInstant(ZoneOffset.UTC)) + "Z";
+        }
+        return PARTITION_TIME_FORMATTER.format(time);
+    }
+
+    private List<JdbcPartition> buildTablePartitions(JdbcInputConnection con, PluginTask task) throws SQLException
+    {
+        if (!task.getTable().isPresent()) {
+            throw new ConfigException("table option is required if partition_type is 'native'");
+        }
+        if (task.getPartitionBy().isPresent()) {
+            throw new ConfigException("partition_by option must not be set if partition_type is 'native'");
+        }
+
+        final ArrayList<JdbcPartition> partitions = new ArrayList<>();
+        for (String partitionName : con.getTablePartitions(task.getTable().get())) {
+            partitions.add(new JdbcPartition(partitionName));
+        }
+        return Collections.unmodifiableList(partitions);
+    }
+
+    private static void checkIntegerPartitionColumn(JdbcColumn column)
+    {
+        if (!isIntegerType(column.getSqlType())) {
+            throw new ConfigException(String.format(ENGLISH,
+                    "Column '%s' set at partition_by option must be an integer type but got %s",
+                    column.getName(), column.getTypeName()));
+        }
+    }
+
+    // Types of which last records are ordered by LastRecordStore.compare as the database does
+    private static boolean isComparableLastRecordType(int sqlType)
+    {
+        switch (sqlType) {
+        case Types.REAL:
+        case Types.FLOAT:
+        case Types.DOUBLE:
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+        case Types.TIMESTAMP:
+        case Types.TIMESTAMP_WITH_TIMEZONE:
+            return true;
+        default:
+            return isIntegerType(sqlType);
+        }
+    }
+
+    private static boolean isIntegerType(int sqlType)
+    {
+        switch (sqlType) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+        case Types.BIGINT:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private String getPartitionBy(PluginTask task)
+    {
+        if (!task.getPartitionBy().isPresent()) {
+            throw new ConfigException(String.format(ENGLISH,
+                    "partition_by option is required if partition_type is '%s'",
+                    task.getPartitionType().orElse("range")));
+        }
+        return task.getPartitionBy().get();
+    }
+
+    private int findPartitionColumnIndex(JdbcSchema schema, String columnName)
+    {
+        Optional<Integer> index = schema.findColumn(columnName);
+        if (!index.isPresent()) {
+            throw new ConfigException(String.format(ENGLISH,
+                    "Column name '%s' is in partition_by option does not exist",
+                    columnName));
+        }
+        return index.get();
+    }
+
+    private String buildPartitionProbeQuery(JdbcInputConnection con, PluginTask task, String selectExpression)
+            throws SQLException
+    {
+        if (task.getQuery().isPresent()) {
+            return con.wrapPartitionQuery(task.getQuery().get(), selectExpression, Optional.<String>empty());
+        }
+        return con.buildSelectQuery(task.getTable().get(), Optional.of(selectExpression),
+                task.getWhere(), Optional.<String>empty());
+    }
+
+    private static BigInteger toBigInteger(Object value)
+    {
+        if (value instanceof BigInteger) {
+            return (BigInteger) value;
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toBigInteger();
+        }
+        return BigInteger.valueOf(((Number) value).longValue());
+    }
+
+    private static long checkPartitionBound(String columnName, BigInteger value)
+    {
+        if (value.bitLength() >= Long.SIZE) {
+            throw new ConfigException(String.format(ENGLISH,
+                    "Values of column '%s' set at partition_by option must be between %d and %d, but got %s",
+                    columnName, Long.MIN_VALUE, Long.MAX_VALUE, value));
+        }
+        return value.longValue();
+    }
+
+    // Splits [min, max] into contiguous ranges. min and max must be checked by checkPartitionBound.
+    private static List<JdbcPartition> buildRangePartitions(String quotedColumnName, int columnIndex,
+            BigInteger min, BigInteger max, int partitionCount)
+    {
+        BigInteger width = max.subtract(min).add(BigInteger.ONE);
+        int count = width.min(BigInteger.valueOf(partitionCount)).intValue();
+
+        final ArrayList<JsonNode> bounds = new ArrayList<>();
+        for (int i = 1; i < count; i++) {
+            BigInteger bound = min.add(width.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(count)));
+            bounds.add(JsonNodeFactory.instance.numberNode(bound.longValue()));
+        }
+        return buildPartitionsFromBounds(quotedColumnName, columnIndex, bounds);
+    }
+
+    // Builds ranges between the ascending bounds. The first and the last ranges are left open
+    // so that rows out of the probed range (NULLs and rows inserted after probing) are also read.
+    private static List<JdbcPartition> buildPartitionsFromBounds(String quotedColumnName, int columnIndex,
+            List<JsonNode> bounds)
+    {
+        if (bounds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int count = bounds.size() + 1;
+
+        final ArrayList<JdbcPartition> partitions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Optional<JsonNode> lower = i == 0 ? Optional.<JsonNode>empty() : Optional.of(bounds.get(i - 1));
+            Optional<JsonNode> upper = i == count - 1 ? Optional.<JsonNode>empty() : Optional.of(bounds.get(i));
+            String condition;
+            final ArrayList<JdbcLiteral> parameters = new ArrayList<>();
+            if (i == 0) {
+                condition = quotedColumnName + " < ? OR " + quotedColumnName + " IS NULL";
+            }
+            else if (i == count - 1) {
+                condition = quotedColumnName + " >= ?";
+            }
+            else {
+                condition = quotedColumnName + " >= ? AND " + quotedColumnName + " < ?";
+            }
+            if (lower.isPresent()) {
+                parameters.add(new JdbcLiteral(columnIndex, lower.get()));
+            }
+            if (upper.isPresent()) {
+                parameters.add(new JdbcLiteral(columnIndex, upper.get()));
+            }
+
+            // integer ranges can be split by partition_split_timeout
+            if (bounds.get(0).isIntegralNumber()) {
+                JdbcPartitionRange range = new JdbcPartitionRange(quotedColumnName, columnIndex,
+                        lower.map(JsonNode::asLong), upper.map(JsonNode::asLong));
+                partitions.add(new JdbcPartition(condition, Collections.unmodifiableList(parameters), range));
+            }
+            else {
+                partitions.add(new JdbcPartition(condition, Collections.unmodifiableList(parameters)));
+            }
+        }
+        return Collections.unmodifiableList(partitions);
+    }
+
+    private PreparedQuery buildPartitionQuery(JdbcInputConnection con, PluginTask task, JdbcPartition partition)
+            throws SQLException
+    {
+        if (task.getIncremental()) {
+            // parameters of the partition come first because they are in the WHERE condition
+            // before the incremental condition
+            PreparedQuery incrementalQuery = con.rebuildIncrementalQuery(task.getTable().get(), task.getSelect(),
+                    buildPartitionWhere(task, partition.getCondition()), task.getQuerySchema(),
+                    task.getIncrementalColumns(), task.getLastRecord().orElse(null));
+            final ArrayList<JdbcLiteral> parameters = new ArrayList<>(partition.getParameters());
+            parameters.addAll(incrementalQuery.getParameters());
+            return new PreparedQuery(incrementalQuery.getQuery(), Collections.unmodifiableList(parameters));
+        }
+
+        String query;
+        if (task.getQuery().isPresent()) {
+            query = con.wrapPartitionQuery(task.getQuery().get(), "*", partition.getCondition());
+        }
+        else {
+            Optional<String> where = buildPartitionWhere(task, partition.getCondition());
+            if (partition.getTablePartition().isPresent()) {
+                query = con.buildTablePartitionSelectQuery(task.getTable().get(), partition.getTablePartition().get(),
+                        task.getSelect(), where, task.getOrderBy());
+            }
+            else {
+                query = con.buildSelectQuery(task.getTable().get(), task.getSelect(),
+                        where, task.getOrderBy());
+            }
+        }
+        return new PreparedQuery(query, partition.getParameters());
+    }
+
+    private static Optional<String> buildPartitionWhere(PluginTask task, Optional<String> condition)
+    {
+        if (!condition.isPresent()) {
+            return task.getWhere();
+        }
+        else if (task.getWhere().isPresent()) {
+            return Optional.of("(" + task.getWhere().get() + ") AND (" + condition.get() + ")");
+        }
+        else {
+            return Optional.of("(" + condition.get() + ")");
+        }
+    }
+
+    // Rows are ordered by the key to know the last read key
+    private PreparedQuery buildRangeQuery(JdbcInputConnection con, PluginTask task, JdbcPartitionRange range)
+            throws SQLException
+    {
+        String query = con.buildSelectQuery(task.getTable().get(), task.getSelect(),
+                buildPartitionWhere(task, Optional.of(range.getCondition())), Optional.of(range.getQuotedColumnName()));
+        return new PreparedQuery(query, range.getParameters());
+    }
+
+    private String buildRangeProbeQuery(JdbcInputConnection con, PluginTask task, JdbcPartitionRange range)
+            throws SQLException
+    {
+        String column = range.getQuotedColumnName();
+        return con.buildSelectQuery(task.getTable().get(), Optional.of(String.format(ENGLISH, "MIN(%s), MAX(%s)", column, column)),
+                buildPartitionWhere(task, Optional.of(range.getLiteralCondition())), Optional.<String>empty());
+    }
+
+    private String normalizeTableNameCase(JdbcInputConnection con, String tableName)
+        throws SQLException
+    {
+        if (con.tableExists(tableName)) {
+            return tableName;
+        } else {
+            String upperTableName = tableName.toUpperCase();
+            String lowerTableName = tableName.toLowerCase();
+            boolean upperExists = con.tableExists(upperTableName);
+            boolean lowerExists = con.tableExists(lowerTableName);
+            if (upperExists && lowerExists) {
+                    throw new ConfigException(String.format("Cannot specify table '%s' because both '%s' and '%s' exist.",
+                            tableName, upperTableName, lowerTableName));
+            } else if (upperExists) {
+                return upperTableName;
+            } else if (lowerExists) {
+                return lowerTableName;
+            } else {
+                // fallback to the given table name. this may throw error later at getSchemaOfQuery
+                return tableName;
+            }
+        }
+    }
+
+    private List<Integer> findColumnIndexes(JdbcSchema schema, List<String> columnNames, String optionName)
+        throws SQLException
+    {
+        final ArrayList<Integer> indices = new ArrayList<>();
+        for (String name : columnNames) {
+            Optional<Integer> index = schema.findColumn(name);
+            if (index.isPresent()) {
+                indices.add(index.get());
+            }
+            else {
+                throw new ConfigException(String.format(ENGLISH,
+                        "Column name '%s' is in %s option does not exist",
+                        name, optionName));
+            }
+        }
+        return Collections.unmodifiableList(indices);
+    }
+
+    private String getRawQuery(PluginTask task, JdbcInputConnection con) throws SQLException
+    {
+        if (task.getQuery().isPresent()) {
+            if (task.getTable().isPresent() || task.getSelect().isPresent() ||
+                    task.getWhere().isPresent() || task.getOrderBy().isPresent()) {
+                throw new ConfigException("'table', 'select', 'where' and 'order_by' parameters are unnecessary if 'query' parameter is set.");
+            } else if (task.getUseRawQueryWithIncremental()) {
+                String rawQuery = task.getQuery().get();
+                for (String columnName : task.getIncrementalColumns()) {
+                    if (!rawQuery.contains(":" + columnName)) {
+                        throw new ConfigException(String.format("Column \":%s\" doesn't exist in query string", columnName));
+                    }
+                }
+                if (!task.getLastRecord().isPresent() && task.getTargets().isEmpty()) {
+                    throw new ConfigException("'last_record' is required when 'use_raw_query_with_incremental' is set to true");
+                }
+                if (task.getLastRecord().isPresent() && task.getLastRecord().get().size() != task.getIncrementalColumns().size()) {
+                    throw new ConfigException("size of 'last_record' is different from of 'incremental_columns'");
+                }
+            } else if (!task.getUseRawQueryWithIncremental() && (!task.getIncrementalColumns().isEmpty() || task.getLastRecord().isPresent())) {
+                throw new ConfigException("'incremental_columns' and 'last_record' parameters are not supported if 'query' parameter is set and 'use_raw_query_with_incremental' is set to false.");
+            }
+            return task.getQuery().get();
+        } else if (task.getTable().isPresent()) {
+            return con.buildSelectQuery(task.getTable().get(), task.getSelect(),
+                    task.getWhere(), task.getOrderBy());
+        } else {
+            throw new ConfigException("'table' or 'query' parameter is required");
+        }
+    }
+
+    @Override
+    public ConfigDiff resume(TaskSource taskSource,
+            Schema schema, int taskCount,
+            InputPlugin.Control control)
+    {
+        final PluginTask task = TASK_MAPPER.map(taskSource, this.getTaskClass());
+
+        // partitions are fixed in the task by transaction(). So, each task reads the same
+        // range of rows when it's resumed.
+        if (task.getChunkQueueId().isPresent()) {
+            // chunks read by the failed tasks are unknown
+            throw new ConfigException("Resuming is not supported if partition_chunks is greater than 1");
+        }
+
+        try (JdbcSnapshot snapshot = beginSnapshot(task, taskCount)) {
+            return buildNextConfigDiff(task, control.run(task.dump(), schema, taskCount));
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    public ConfigDiff guess(ConfigSource config)
+    {
+        return CONFIG_MAPPER_FACTORY.newConfigDiff();
+    }
+
+    protected ConfigDiff buildNextConfigDiff(PluginTask task, List<TaskReport> reports)
+    {
+        final ConfigDiff next = CONFIG_MAPPER_FACTORY.newConfigDiff();
+        if (!task.getTargets().isEmpty()) {
+            if (task.getIncremental()) {
+                next.set("targets", buildNextTargets(task, reports));
+            }
+            return next;
+        }
+        Optional<List<JsonNode>> lastRecord = mergeLastRecords(reports);
+        if (lastRecord.isPresent()) {
+            next.set("last_record", lastRecord.get());
+        } else if (task.getLastRecord().isPresent()) {
+            next.set("last_record", task.getLastRecord().get());
+        }
+        return next;
+    }
+
+    // last_record of each target is kept in targets option. Reports are ordered by task index.
+    private List<JdbcTarget> buildNextTargets(PluginTask task, List<TaskReport> reports)
+    {
+        final ArrayList<JdbcTarget> targets = new ArrayList<>();
+        for (int i = 0; i < task.getTargets().size(); i++) {
+            JdbcTarget target = task.getTargets().get(i);
+            int taskIndex = i * getTasksPerTarget(task);
+            if (taskIndex < reports.size() && reports.get(taskIndex).has("last_record")) {
+                final TaskReport report = CONFIG_MAPPER_FACTORY.rebuildTaskReport(reports.get(taskIndex));
+                final ArrayList<JsonNode> lastRecord = new ArrayList<>();
+                for (JsonNode value : report.get(JsonNode.class, "last_record")) {
+                    lastRecord.add(value);
+                }
+                target = target.withLastRecord(Collections.unmodifiableList(lastRecord));
+            }
+            else if (!target.getLastRecord().isPresent() && task.getLastRecord().isPresent()) {
+                target = target.withLastRecord(task.getLastRecord().get());
+            }
+            targets.add(target);
+        }
+        return Collections.unmodifiableList(targets);
+    }
+
+    // Tasks of partitions report the last records of their own partitions. The largest one is
+    // the last record of the transaction.
+    private static Optional<List<JsonNode>> mergeLastRecords(List<TaskReport> reports)
+    {
+        Optional<List<JsonNode>> merged = Optional.empty();
+        for (TaskReport taskReport : reports) {
+            if (!taskReport.has("last_record")) {
+                continue;
+            }
+            // |reports| are from embulk-core, then their backend is Jackson on the embulk-core side.
+            // To render |JsonNode| (that is on the plugin side) from |reports|, they need to be rebuilt.
+            final TaskReport report = CONFIG_MAPPER_FACTORY.rebuildTaskReport(taskReport);
+            final ArrayList<JsonNode> lastRecord = new ArrayList<>();
+            for (JsonNode value : report.get(JsonNode.class, "last_record")) {
+                lastRecord.add(value);
+            }
+            if (!merged.isPresent() || LastRecordStore.compare(lastRecord, merged.get()) > 0) {
+                merged = Optional.of(Collections.unmodifiableList(lastRecord));
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public void cleanup(TaskSource taskSource,
+            Schema schema, int taskCount,
+            List<TaskReport> successTaskReports)
+    {
+        // do nothing
+    }
+
+    private static class LastRecordStore
+    {
+        private final List<Integer> columnIndexes;
+        private final JsonNode[] lastValues;
+        private final List<String> columnNames;
+        private final String optionName;
+
+        public LastRecordStore(List<Integer> columnIndexes, List<String> columnNames)
+        {
+            this(columnIndexes, columnNames, "incremental_columns");
+        }
+
+        public LastRecordStore(List<Integer> columnIndexes, List<String> columnNames, String optionName)
+        {
+            this.columnIndexes = columnIndexes;
+            this.lastValues = new JsonNode[columnIndexes.size()];
+            this.columnNames = columnNames;
+            this.optionName = optionName;
+        }
+
+        public void accept(List<ColumnGetter> getters)
+            throws SQLException
+        {
+            for (int i = 0; i < columnIndexes.size(); i++) {
+                lastValues[i] = getters.get(columnIndexes.get(i)).encodeToJson();
+            }
+        }
+
         public List<JsonNode> getList()
         {
             final ArrayList<JsonNode> values = new ArrayList<>();
             for (int i = 0; i < lastValues.length; i++) {
                 if (lastValues[i] == null || lastValues[i].isNull()) {
                     throw new DataException(String.format(ENGLISH,
-                            "incremental_columns can't include null values but the last row is null at column '%s'",
-                            columnNames.get(i)));
+                            "%s can't include null values but the last row is null at column '%s'",
+                            optionName, columnNames.get(i)));
                 }
                 values.add(lastValues[i]);
             }
             return Collections.unmodifiableList(values);
         }
+
+        // Compares last records in the order of incremental_columns. Numbers are compared as
+        // numbers. Strings are compared lexicographically, which orders timestamps because the
+        // incremental handlers encode them in a fixed-width format. Other strings are rejected by
+        // setupPartitions because their order depends on the collation of the database.
+        public static int compare(List<JsonNode> a, List<JsonNode> b)
+        {
+            for (int i = 0; i < Math.min(a.size(), b.size()); i++) {
+                int result;
+                if (a.get(i).isNumber() && b.get(i).isNumber()) {
+                    result = a.get(i).decimalValue().compareTo(b.get(i).decimalValue());
+                }
+                else {
+                    result = a.get(i).asText().compareTo(b.get(i).asText());
+                }
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return Integer.compare(a.size(), b.size());
+        }
+    }
+
+    @Override
+    public TaskReport run(TaskSource taskSource,
+            Schema schema, int taskIndex,
+            PageOutput output)
+    {
+        final PluginTask task = TASK_MAPPER.map(taskSource, this.getTaskClass());
+
+        BufferAllocator allocator = Exec.getBufferAllocator();
+
+        if (task.getChunkQueueId().isPresent()) {
+            JdbcChunkQueue chunks = JdbcChunkQueue.get(task.getChunkQueueId().get());
+            if (task.getAsyncOutputPages() > 0) {
+                runWithAsyncOutput(task, allocator, schema, output,
+                        pageBuilder -> fetchChunks(task, taskIndex, chunks, pageBuilder));
+            }
+            else {
+                try {
+                    fetchChunks(task, taskIndex, chunks, new PageBuilder(allocator, schema, output));
+                } catch (SQLException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            return CONFIG_MAPPER_FACTORY.newTaskReport();
+        }
+
+        List<JdbcPartition> partitions = getTaskPartitions(task, taskIndex);
+        // a partition that may be split is also read by a fetcher because the connection is replaced
+        if (partitions.size() > 1 || (!partitions.isEmpty() && task.getPartitionSplitTimeout().isPresent())) {
+            runFetchers(task, allocator, schema, taskIndex, partitions, output);
+            return CONFIG_MAPPER_FACTORY.newTaskReport();
+        }
+
+        Optional<List<JsonNode>> lastRecord;
+        if (task.getAsyncOutputPages() > 0) {
+            lastRecord = runWithAsyncOutput(task, allocator, schema, output,
+                    pageBuilder -> fetchTask(task, taskIndex, partitions, pageBuilder));
+        }
+        else {
+            try {
+                lastRecord = fetchTask(task, taskIndex, partitions, new PageBuilder(allocator, schema, output));
+            } catch (SQLException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        final TaskReport report = CONFIG_MAPPER_FACTORY.newTaskReport();
+        if (lastRecord.isPresent()) {
+            report.set("last_record", lastRecord.get());
+        }
+
+        return report;
     }
 
-    @Override
-    public TaskReport run(TaskSource taskSource,
-            Schema schema, int taskIndex,
-            PageOutput output)
+    // Reads the query of the task by a connection. Returns the last record if incremental is true
+    // and any rows are read.
+    private Optional<List<JsonNode>> fetchTask(PluginTask task, int taskIndex, List<JdbcPartition> partitions,
+            PageBuilder pageBuilder) throws SQLException
     {
-        final PluginTask task = TASK_MAPPER.map(taskSource, this.getTaskClass());
-
-        PreparedQuery builtQuery = task.getBuiltQuery();
-        JdbcSchema querySchema = task.getQuerySchema();
-        BufferAllocator allocator = Exec.getBufferAllocator();
-        PageBuilder pageBuilder = new PageBuilder(allocator, schema, output);
-
         long totalRows = 0;
 
         LastRecordStore lastRecordStore = null;
 
-        try (JdbcInputConnection con = newConnection(task)) {
-            if (task.getBeforeSelect().isPresent()) {
-                con.executeUpdate(task.getBeforeSelect().get());
+        try (TaskConnection con = new TaskConnection(task, taskIndex)) {
+            PreparedQuery builtQuery;
+            if (!task.getTargetQueries().isEmpty()) {
+                builtQuery = task.getTargetQueries().get(taskIndex / getTasksPerTarget(task));
             }
-
-            List<ColumnGetter> getters = newColumnGetters(con, task, querySchema, pageBuilder);
-            try (BatchSelect cursor = con.newSelectCursor(builtQuery, getters, task.getFetchRows(), task.getSocketTimeout())) {
-                while (true) {
-                    long rows = fetch(cursor, getters, pageBuilder);
-                    if (rows <= 0L) {
-                        break;
-                    }
-                    totalRows += rows;
-                }
+            else if (partitions.isEmpty()) {
+                builtQuery = task.getBuiltQuery();
+            }
+            else {
+                builtQuery = buildPartitionQuery(con.get(), task, partitions.get(0));
             }
 
+            List<ColumnGetter> getters = newColumnGetters(con.get(), task, task.getQuerySchema(), pageBuilder);
+            totalRows = fetchQuery(con, task, builtQuery, getters, pageBuilder);
+
             if (task.getIncremental() && totalRows > 0) {
                 lastRecordStore = new LastRecordStore(task.getIncrementalColumnIndexes(), task.getIncrementalColumns());
                 lastRecordStore.accept(getters);
@@ -527,21 +1723,541 @@ public abstract class AbstractJdbcInputPlugin
             //      after_select gets values and store them in TaskReport, and after_commit take
             //      them as placeholder. Or, after_select puts values to an intermediate table, and
             //      after_commit moves those values to the actual table.
+            if (task.getAfterSelect().isPresent()) {
+                con.get().executeUpdate(task.getAfterSelect().get());
+            }
+            con.get().commit();
+        }
+
+        return lastRecordStore == null ? Optional.<List<JsonNode>>empty() : Optional.of(lastRecordStore.getList());
+    }
+
+    private interface FetchStage<T>
+    {
+        public T run(PageBuilder pageBuilder) throws SQLException;
+    }
+
+    // Hands off the pages to the next plugins asynchronously. Another thread fetches the rows and
+    // builds the pages while this thread adds them to the output. The fetcher waits if
+    // async_output_pages pages are not taken yet. If either side fails, the other side is cancelled.
+    // Decoding the rows and building the pages stay on the fetcher because the column getters
+    // write the values into the PageBuilder directly.
+    private <T> T runWithAsyncOutput(PluginTask task, BufferAllocator allocator, Schema schema, PageOutput output,
+            FetchStage<T> stage)
+    {
+        final BlockingQueue<Page> pages = new ArrayBlockingQueue<>(task.getAsyncOutputPages());
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        final ExecutorService executor = Executors.newSingleThreadExecutor(newFetcherThreadFactory());
+        try {
+            Future<T> future = executor.submit(() -> {
+                try (PageBuilder pageBuilder = new PageBuilder(allocator, schema, new PageHandOff(pages, cancelled))) {
+                    return stage.run(pageBuilder);
+                }
+            });
+            executor.shutdown();
+
+            while (!future.isDone() || !pages.isEmpty()) {
+                Page page = pages.poll(100, TimeUnit.MILLISECONDS);
+                if (page != null) {
+                    output.add(page);
+                }
+            }
+            T result = future.get();  // throws the exception of the fetcher
+            output.finish();
+            return result;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            cancelled.set(true);
+            executor.shutdownNow();
+            Page page;
+            while ((page = pages.poll()) != null) {
+                page.release();
+            }
+        }
+    }
+
+    // Reads chunks until no chunks remain including the chunks of the other tasks. The connection
+    // and the PageBuilder are reused for all chunks.
+    private long fetchChunks(PluginTask task, int taskIndex, JdbcChunkQueue chunks, PageBuilder pageBuilder)
+            throws SQLException
+    {
+        long totalRows = 0;
+        try (TaskConnection con = new TaskConnection(task, taskIndex)) {
+            List<ColumnGetter> getters = newColumnGetters(con.get(), task, task.getQuerySchema(), pageBuilder);
+            int chunkCount = 0;
+            Integer chunk;
+            while ((chunk = chunks.poll(taskIndex)) != null) {
+                PreparedQuery builtQuery = buildPartitionQuery(con.get(), task, task.getPartitions().get(chunk));
+                totalRows += fetchQuery(con, task, builtQuery, getters, pageBuilder);
+                chunkCount++;
+            }
+            logger.info(String.format("Fetched %,d rows of %d chunks.", totalRows, chunkCount));
+
+            pageBuilder.finish();
+
+            if (task.getAfterSelect().isPresent()) {
+                con.get().executeUpdate(task.getAfterSelect().get());
+            }
+            con.get().commit();
+        }
+        return totalRows;
+    }
+
+    // Reads the partitions of the task at the same time with a connection for each. PageBuilder
+    // and PageOutput are not thread-safe. So, each fetcher builds pages with its own PageBuilder,
+    // and this thread adds them to the output through a bounded queue of async_output_pages pages, or
+    // 2 pages per fetcher by default.
+    private void runFetchers(PluginTask task, BufferAllocator allocator, Schema schema, int taskIndex,
+            List<JdbcPartition> partitions, PageOutput output)
+    {
+        int capacity = task.getAsyncOutputPages() > 0 ? task.getAsyncOutputPages() : partitions.size() * 2;
+        final BlockingQueue<Page> pages = new ArrayBlockingQueue<>(capacity);
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        final ExecutorService executor = Executors.newFixedThreadPool(partitions.size(), newFetcherThreadFactory());
+        try {
+            final ArrayList<Future<Long>> futures = new ArrayList<>();
+            for (JdbcPartition partition : partitions) {
+                futures.add(executor.submit(() -> {
+                    try (PageBuilder pageBuilder = new PageBuilder(allocator, schema, new PageHandOff(pages, cancelled))) {
+                        return fetchPartition(task, taskIndex, partition, pageBuilder);
+                    }
+                }));
+            }
+            executor.shutdown();
+
+            while (!executor.isTerminated() || !pages.isEmpty()) {
+                Page page = pages.poll(100, TimeUnit.MILLISECONDS);
+                if (page != null) {
+                    output.add(page);
+                }
+                for (Future<Long> future : futures) {
+                    if (future.isDone()) {
+                        future.get();  // throws the exception of a failed fetcher
+                    }
+                }
+            }
+
+            long totalRows = 0;
+            for (Future<Long> future : futures) {
+                totalRows += future.get();
+            }
+            logger.info(String.format("Fetched %,d rows by %d connections.", totalRows, partitions.size()));
+            output.finish();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            cancelled.set(true);
+            executor.shutdownNow();
+            Page page;
+            while ((page = pages.poll()) != null) {
+                page.release();
+            }
+        }
+    }
+
+    private long fetchPartition(PluginTask task, int taskIndex, JdbcPartition partition,
+            PageBuilder pageBuilder) throws SQLException
+    {
+        if (task.getPartitionSplitTimeout().isPresent() && partition.getRange().isPresent()) {
+            return fetchSplittingRange(task, taskIndex, partition.getRange().get(), pageBuilder);
+        }
+
+        long totalRows = 0;
+        try (TaskConnection con = new TaskConnection(task, taskIndex)) {
+            PreparedQuery builtQuery = buildPartitionQuery(con.get(), task, partition);
+            List<ColumnGetter> getters = newColumnGetters(con.get(), task, task.getQuerySchema(), pageBuilder);
+            totalRows = fetchQuery(con, task, builtQuery, getters, pageBuilder);
+            pageBuilder.finish();
+
+            if (task.getAfterSelect().isPresent()) {
+                con.get().executeUpdate(task.getAfterSelect().get());
+            }
+            con.get().commit();
+        }
+        return totalRows;
+    }
+
+    // Reads a range in the order of the key. If reading a range takes longer than
+    // partition_split_timeout or the query times out, the query is cancelled and the rest of the
+    // range after the last read key is split into halves that are read by new queries. A range
+    // that has fewer keys than partition_split_min_range is read without the time limit.
+    private long fetchSplittingRange(PluginTask task, int taskIndex, JdbcPartitionRange range,
+            PageBuilder pageBuilder) throws SQLException
+    {
+        final ArrayDeque<PendingRange> ranges = new ArrayDeque<>();
+        ranges.push(new PendingRange(range, true));
+        long totalRows = 0;
+        int queryCount = 0;
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "embulk-input-jdbc-split-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        JdbcInputConnection con = null;
+        try {
+            con = openTaskConnection(task, taskIndex);
+            while (!ranges.isEmpty()) {
+                PendingRange pending = ranges.pop();
+                RangeProgress progress = new RangeProgress(pending.range.getColumnIndex(),
+                        pending.splittable ? task.getPartitionSplitTimeout() : Optional.<Integer>empty());
+                int queryTimeout = task.getSocketTimeout();
+                if (pending.splittable && (queryTimeout <= 0 || queryTimeout > task.getPartitionSplitTimeout().get())) {
+                    queryTimeout = task.getPartitionSplitTimeout().get();
+                }
+
+                List<ColumnGetter> getters = newColumnGetters(con, task, task.getQuerySchema(), pageBuilder);
+                PreparedQuery builtQuery = buildRangeQuery(con, task, pending.range);
+                queryCount++;
+                boolean completed = false;
+                try (SelectCursor cursor = con.newSelectCursor(builtQuery, getters, task.getFetchRows(), queryTimeout)) {
+                    DeadlineCanceller canceller = pending.splittable
+                        ? new DeadlineCanceller(timer, cursor, progress, task.getPartitionSplitTimeout().get()) : null;
+                    try {
+                        while (!progress.isExpired()) {
+                            if (fetch(cursor, getters, pageBuilder, progress, null) <= 0L) {
+                                completed = true;
+                                break;
+                            }
+                        }
+                    } finally {
+                        if (canceller != null) {
+                            canceller.stop();
+                        }
+                    }
+                    if (!completed) {
+                        cursor.cancel();
+                    }
+                } catch (SQLException ex) {
+                    if (!pending.splittable || !(progress.isExpired() || con.isQueryTimeout(ex))) {
+                        throw ex;
+                    }
+                    logger.warn("Query of range {} timed out: {}", pending.range, ex.getMessage());
+                }
+                totalRows += progress.getRows();
+                if (completed) {
+                    continue;
+                }
+
+                // the connection may be broken or its transaction may be aborted
+                try {
+                    con.close();
+                } catch (SQLException ex) {
+                    logger.warn("Failed to close the connection of the cancelled query", ex);
+                }
+                con = openTaskConnection(task, taskIndex);
+
+                Optional<JdbcPartitionRange> rest = progress.getLastKey().isPresent()
+                    ? pending.range.after(progress.getLastKey().get()) : Optional.of(pending.range);
+                if (!rest.isPresent()) {
+                    continue;
+                }
+                List<Object> keys = con.selectSingleRow(buildRangeProbeQuery(con, task, rest.get()));
+                if (keys.isEmpty() || keys.get(0) == null || keys.get(1) == null) {
+                    continue;
+                }
+                BigInteger min = toBigInteger(keys.get(0));
+                BigInteger max = toBigInteger(keys.get(1));
+                // rows out of the range of BIGINT may be inserted into the last range after probing
+                if (min.bitLength() < Long.SIZE && max.bitLength() < Long.SIZE
+                        && JdbcPartitionRange.isSplittable(min.longValue(), max.longValue(), task.getPartitionSplitMinRange())) {
+                    List<JdbcPartitionRange> halves = rest.get().splitHalves(min.longValue(), max.longValue());
+                    logger.info("Splitting range {} into {} and {}", rest.get(), halves.get(0), halves.get(1));
+                    ranges.push(new PendingRange(halves.get(1), true));
+                    ranges.push(new PendingRange(halves.get(0), true));
+                }
+                else {
+                    logger.info("Range {} can't be split anymore. Reading it without partition_split_timeout.", rest.get());
+                    ranges.push(new PendingRange(rest.get(), false));
+                }
+            }
+            logger.info(String.format("Fetched %,d rows of range %s by %d queries.", totalRows, range, queryCount));
+
+            pageBuilder.finish();
+
             if (task.getAfterSelect().isPresent()) {
                 con.executeUpdate(task.getAfterSelect().get());
             }
             con.commit();
+        } finally {
+            timer.shutdownNow();
+            if (con != null) {
+                con.close();
+            }
+        }
+        return totalRows;
+    }
 
-        } catch (SQLException ex) {
-            throw new RuntimeException(ex);
+    // Cancels the query of a range when partition_split_timeout passes because rows may not arrive
+    // for a long time while the query runs. The query isn't cancelled after stop() returns.
+    private static class DeadlineCanceller
+    {
+        private final SelectCursor cursor;
+        private final RangeProgress progress;
+        private final ScheduledFuture<?> future;
+        private boolean stopped = false;
+
+        public DeadlineCanceller(ScheduledExecutorService timer, SelectCursor cursor, RangeProgress progress,
+                int timeoutSeconds)
+        {
+            this.cursor = cursor;
+            this.progress = progress;
+            this.future = timer.schedule(this::cancel, timeoutSeconds, TimeUnit.SECONDS);
         }
 
-        final TaskReport report = CONFIG_MAPPER_FACTORY.newTaskReport();
-        if (lastRecordStore != null) {
-            report.set("last_record", lastRecordStore.getList());
+        private synchronized void cancel()
+        {
+            if (stopped) {
+                return;
+            }
+            progress.expire();
+            try {
+                cursor.cancel();
+            } catch (SQLException | RuntimeException ex) {
+                logger.warn("Failed to cancel the query at partition_split_timeout", ex);
+            }
         }
 
-        return report;
+        public synchronized void stop()
+        {
+            stopped = true;
+            future.cancel(false);
+        }
+    }
+
+    private JdbcInputConnection openTaskConnection(PluginTask task, int taskIndex) throws SQLException
+    {
+        JdbcInputConnection con = newTaskConnection(task, taskIndex);
+        try {
+            if (task.getBeforeSelect().isPresent()) {
+                con.executeUpdate(task.getBeforeSelect().get());
+            }
+        } catch (SQLException | RuntimeException ex) {
+            con.close();
+            throw ex;
+        }
+        return con;
+    }
+
+    // A connection of a task after before_select. It's replaced by a new one when a query is
+    // retried.
+    private class TaskConnection
+            implements AutoCloseable
+    {
+        private final PluginTask task;
+        private final int taskIndex;
+        private JdbcInputConnection con;
+
+        public TaskConnection(PluginTask task, int taskIndex) throws SQLException
+        {
+            this.task = task;
+            this.taskIndex = taskIndex;
+            this.con = openTaskConnection(task, taskIndex);
+        }
+
+        public JdbcInputConnection get()
+        {
+            return con;
+        }
+
+        // the connection may be broken or its transaction may be aborted. If a new connection
+        // can't be opened, the closed connection is kept and reopen is called again at the next
+        // retry.
+        public void reopen() throws SQLException
+        {
+            try {
+                con.close();
+            } catch (SQLException ex) {
+                logger.warn("Failed to close the connection of the failed query", ex);
+            }
+            con = openTaskConnection(task, taskIndex);
+        }
+
+        @Override
+        public void close() throws SQLException
+        {
+            con.close();
+        }
+    }
+
+    // Counts the rows added to PageBuilder to resume the query after the last one. The getters keep
+    // the values of the last row until the next row is read. So, its key is encoded only when the
+    // query fails instead of for every row.
+    private static class KeyProgress
+    {
+        private final LastRecordStore lastKeyStore;
+        private long rows = 0;
+        private boolean reading = false;
+
+        public KeyProgress(LastRecordStore lastKeyStore)
+        {
+            this.lastKeyStore = lastKeyStore;
+        }
+
+        public void startRow()
+        {
+            reading = true;
+        }
+
+        public void accept()
+        {
+            rows++;
+            reading = false;
+        }
+
+        // Returns false if the query failed while the getters were reading a row. Some of the
+        // getters have the values of the failed row then.
+        public boolean captureLastKey(List<ColumnGetter> getters) throws SQLException
+        {
+            if (reading) {
+                return false;
+            }
+            if (rows > 0) {
+                lastKeyStore.accept(getters);
+            }
+            return true;
+        }
+
+        public Optional<List<JsonNode>> getLastKey()
+        {
+            if (rows == 0) {
+                return Optional.empty();
+            }
+            return Optional.of(lastKeyStore.getList());
+        }
+
+        public long getRows()
+        {
+            return rows;
+        }
+    }
+
+    private static class PendingRange
+    {
+        private final JdbcPartitionRange range;
+        private final boolean splittable;
+
+        public PendingRange(JdbcPartitionRange range, boolean splittable)
+        {
+            this.range = range;
+            this.splittable = splittable;
+        }
+    }
+
+    // The last key read from a range and the deadline to read the range
+    private static class RangeProgress
+    {
+        private final int columnIndex;
+        private final Optional<Long> deadline;
+        private Optional<Long> lastKey = Optional.empty();
+        private long rows = 0;
+        private volatile boolean expired = false;
+
+        public RangeProgress(int columnIndex, Optional<Integer> timeoutSeconds)
+        {
+            this.columnIndex = columnIndex;
+            this.deadline = timeoutSeconds.map(seconds -> System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds));
+        }
+
+        // Returns false to stop reading if the deadline passed. It's checked every 1,000 rows.
+        public boolean accept(ResultSet result) throws SQLException
+        {
+            lastKey = Optional.of(result.getLong(columnIndex + 1));  // JDBC column index begins from 1
+            rows++;
+            return rows % 1000 != 0 || !isExpired();
+        }
+
+        public boolean isExpired()
+        {
+            if (!expired && deadline.isPresent() && System.nanoTime() - deadline.get() >= 0) {
+                expired = true;
+            }
+            return expired;
+        }
+
+        // called by DeadlineCanceller before it cancels the query
+        public void expire()
+        {
+            expired = true;
+        }
+
+        public Optional<Long> getLastKey()
+        {
+            return lastKey;
+        }
+
+        public long getRows()
+        {
+            return rows;
+        }
+    }
+
+    // Virtual threads of Java 21 if available. Fetchers mostly wait for the database. This
+    // plugin is built for Java 8, so they are created via reflection.
+    private static ThreadFactory newFetcherThreadFactory()
+    {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return runnable -> {
+                Thread thread = new Thread(runnable, "embulk-input-jdbc-fetcher");
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    private static class PageHandOff
+            implements PageOutput
+    {
+        private final BlockingQueue<Page> pages;
+        private final AtomicBoolean cancelled;
+
+        public PageHandOff(BlockingQueue<Page> pages, AtomicBoolean cancelled)
+        {
+            this.pages = pages;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public void add(Page page)
+        {
+            try {
+                while (!pages.offer(page, 100, TimeUnit.MILLISECONDS)) {
+                    if (cancelled.get()) {
+                        page.release();
+                        throw new CancellationException("Task was cancelled");
+                    }
+                }
+            } catch (InterruptedException ex) {
+                page.release();
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Task was interrupted");
+            }
+        }
+
+        @Override
+        public void finish()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
     }
 
     protected ColumnGetterFactory newColumnGetterFactory(PageBuilder pageBuilder, ZoneId dateTimeZone)
@@ -588,10 +2304,94 @@ public abstract class AbstractJdbcInputPlugin
         return CONFIG_MAPPER.map(CONFIG_MAPPER_FACTORY.newConfigSource(), JdbcColumnOption.class);
     }
 
-    private long fetch(BatchSelect cursor,
+    // Reads all rows of the query. If retry_limit is set and the query fails by a retryable error,
+    // the connection is replaced and the rest of the rows after the last key added to PageBuilder
+    // are read with exponential backoff. Returns the number of the rows.
+    private long fetchQuery(TaskConnection con, PluginTask task, PreparedQuery builtQuery,
+            List<ColumnGetter> getters, PageBuilder pageBuilder) throws SQLException
+    {
+        if (task.getRetryLimit() == 0) {
+            long totalRows = 0;
+            try (SelectCursor cursor = newSelectCursor(con.get(), task, builtQuery, getters, Optional.<List<JsonNode>>empty())) {
+                while (true) {
+                    long rows = fetch(cursor, getters, pageBuilder);
+                    if (rows <= 0L) {
+                        break;
+                    }
+                    totalRows += rows;
+                }
+            }
+            return totalRows;
+        }
+
+        KeyProgress keyProgress = new KeyProgress(
+                new LastRecordStore(task.getKeysetColumnIndexes(), task.getKeysetColumns(), "keyset_columns"));
+        int retries = 0;
+        long waitMillis = task.getRetryInitialWaitMillis();
+        boolean reopen = false;
+        while (true) {
+            try {
+                if (reopen) {
+                    con.reopen();
+                    reopen = false;
+                }
+                try (SelectCursor cursor = newSelectCursor(con.get(), task, builtQuery, getters, keyProgress.getLastKey())) {
+                    while (true) {
+                        // the rows are counted by keyProgress
+                        if (fetch(cursor, getters, pageBuilder, null, keyProgress) <= 0L) {
+                            break;
+                        }
+                    }
+                }
+                return keyProgress.getRows();
+            } catch (SQLException ex) {
+                if (retries >= task.getRetryLimit() || !con.get().isRetryable(ex) || con.get().isQueryTimeout(ex)
+                        || !keyProgress.captureLastKey(getters)) {
+                    throw ex;
+                }
+                retries++;
+                logger.warn(String.format(ENGLISH, "Query failed after %,d rows. Reading the rest of the rows in %,d ms (%d/%d): %s",
+                            keyProgress.getRows(), waitMillis, retries, task.getRetryLimit(), ex.getMessage()));
+                try {
+                    Thread.sleep(waitMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+                waitMillis = Math.min(waitMillis * 2, task.getMaxRetryWaitMillis());
+                reopen = true;
+            }
+        }
+    }
+
+    // startKey is used only by keyset_pagination to resume the query after it
+    private SelectCursor newSelectCursor(JdbcInputConnection con, PluginTask task, PreparedQuery builtQuery,
+            List<ColumnGetter> getters, Optional<List<JsonNode>> startKey) throws SQLException
+    {
+        if (task.getKeysetPagination()) {
+            return con.newKeysetSelectCursor(builtQuery, getters, task.getQuerySchema(), task.getKeysetColumns(),
+                    startKey, task.getFetchRows(), task.getSocketTimeout());
+        }
+        return con.newSelectCursor(builtQuery, getters, task.getFetchRows(), task.getSocketTimeout());
+    }
+
+    private long fetch(SelectCursor cursor,
             List<ColumnGetter> getters, PageBuilder pageBuilder) throws SQLException
     {
-        ResultSet result = cursor.fetch();
+        return fetch(cursor, getters, pageBuilder, null, null);
+    }
+
+    // progress is null unless the rows are read from a range that may be split. keyProgress is
+    // null unless the query may be retried.
+    private long fetch(SelectCursor cursor,
+            List<ColumnGetter> getters, PageBuilder pageBuilder, RangeProgress progress,
+            KeyProgress keyProgress) throws SQLException
+    {
+        if (cursor instanceof PageBatchSelect) {
+            return ((PageBatchSelect) cursor).fetch(pageBuilder);
+        }
+
+        ResultSet result = ((BatchSelect) cursor).fetch();
         if (result == null || !result.next()) {
             return 0;
         }
@@ -600,16 +2400,25 @@ public abstract class AbstractJdbcInputPlugin
         long rows = 0;
         long reportRows = 500;
         do {
+            if (keyProgress != null) {
+                keyProgress.startRow();
+            }
             for (int i=0; i < getters.size(); i++) {
                 int index = i + 1;  // JDBC column index begins from 1
                 getters.get(i).getAndSet(result, index, columns.get(i));
             }
             pageBuilder.addRecord();
             rows++;
+            if (keyProgress != null) {
+                keyProgress.accept();
+            }
             if (rows % reportRows == 0) {
                 logger.info(String.format("Fetched %,d rows.", rows));
                 reportRows *= 2;
             }
+            if (progress != null && !progress.accept(result)) {
+                break;
+            }
         } while (result.next());
 
         return rows;
@@ -0,0 +1,79 @@
+package org.embulk.input.jdbc;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import org.embulk.config.ConfigException;
+
+// Indexes of partitions (chunks) shared by the tasks running in the same JVM with the transaction.
+// Each task reads its own chunks from the head of its deque first. A task that finished its own
+// chunks steals chunks from the tail of the deques of the other tasks.
+// The queues are registered in a static map. Tasks run by distributed executors (e.g. mapreduce)
+// can't see the queue of the transaction, and get() fails with a ConfigException.
+public class JdbcChunkQueue
+        implements AutoCloseable
+{
+    private static final Map<String, JdbcChunkQueue> queues = new ConcurrentHashMap<>();
+
+    private final String id;
+    private final ConcurrentLinkedDeque<Integer>[] deques;
+
+    @SuppressWarnings("unchecked")
+    private JdbcChunkQueue(String id, int chunkCount, int taskCount)
+    {
+        this.id = id;
+        this.deques = new ConcurrentLinkedDeque[taskCount];
+        int chunksPerTask = (chunkCount + taskCount - 1) / taskCount;
+        for (int i = 0; i < taskCount; i++) {
+            deques[i] = new ConcurrentLinkedDeque<>();
+            for (int chunk = i * chunksPerTask; chunk < Math.min((i + 1) * chunksPerTask, chunkCount); chunk++) {
+                deques[i].addLast(chunk);
+            }
+        }
+    }
+
+    public static JdbcChunkQueue register(int chunkCount, int taskCount)
+    {
+        JdbcChunkQueue queue = new JdbcChunkQueue(UUID.randomUUID().toString(), chunkCount, taskCount);
+        queues.put(queue.getId(), queue);
+        return queue;
+    }
+
+    public static JdbcChunkQueue get(String id)
+    {
+        JdbcChunkQueue queue = queues.get(id);
+        if (queue == null) {
+            throw new ConfigException("Chunks of the partitions are not available in this JVM. partition_chunks requires the local executor because the chunks are shared in the JVM of the transaction. Remove partition_chunks to use other executors.");
+        }
+        return queue;
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    // Returns null if no chunks remain
+    public Integer poll(int taskIndex)
+    {
+        Integer chunk = deques[taskIndex].pollFirst();
+        if (chunk != null) {
+            return chunk;
+        }
+        for (int i = 1; i < deques.length; i++) {
+            chunk = deques[(taskIndex + i) % deques.length].pollLast();
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close()
+    {
+        queues.remove(id);
+    }
+}
@@ -0,0 +1,142 @@
+package org.embulk.input.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.util.Locale.ENGLISH;
+
+// Limits the number of connections per host and user in the JVM. The limit is shared by all tasks
+// and transactions of the plugin, and waiting connections get permits in FIFO order. The connections
+// are returned as they are so that dialects can use the classes of the drivers. Their permits are
+// released by close(Connection), which JdbcInputConnection.close calls.
+public class JdbcConnectionLimiter
+{
+    private static final Logger logger = LoggerFactory.getLogger(JdbcConnectionLimiter.class);
+
+    // host and port of URLs such as jdbc:postgresql://host:port/database
+    private static final Pattern HOST_PATTERN = Pattern.compile("^jdbc:[^/]*//([^/;?]+)");
+
+    private static final Map<String, JdbcConnectionLimiter> limiters = new ConcurrentHashMap<>();
+
+    // connections that hold permits
+    private static final Map<Connection, JdbcConnectionLimiter> leases =
+        Collections.synchronizedMap(new IdentityHashMap<Connection, JdbcConnectionLimiter>());
+
+    public interface Connector
+    {
+        public Connection connect() throws SQLException;
+    }
+
+    private final String key;
+    private final int limit;
+    private final Semaphore permits;
+    private final AtomicLong connectionCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    private JdbcConnectionLimiter(String key, int limit)
+    {
+        this.key = key;
+        this.limit = limit;
+        this.permits = new Semaphore(limit, true);
+    }
+
+    // Waits for a permit for timeoutSeconds at most (0 means no timeout), and connects by the connector. The permit is
+    // released when the returned connection is closed by close(Connection).
+    public static Connection connect(String url, String user, int limit, int timeoutSeconds,
+            Connector connector) throws SQLException
+    {
+        String key = buildKey(url, user);
+        JdbcConnectionLimiter limiter = limiters.computeIfAbsent(key, k -> new JdbcConnectionLimiter(k, limit));
+        if (limiter.limit != limit) {
+            logger.warn("connection_limit {} is ignored because connections to {} are already limited to {}",
+                    limit, key, limiter.limit);
+        }
+        return limiter.connect(timeoutSeconds, connector);
+    }
+
+    // Closes the connection and releases its permit if it has one. The permit is released only
+    // once even if this is called again.
+    public static void close(Connection con) throws SQLException
+    {
+        try {
+            con.close();
+        } finally {
+            JdbcConnectionLimiter limiter = leases.remove(con);
+            if (limiter != null) {
+                limiter.permits.release();
+            }
+        }
+    }
+
+    // for tests
+    static int getWaitingCount(String url, String user)
+    {
+        JdbcConnectionLimiter limiter = limiters.get(buildKey(url, user));
+        return limiter == null ? 0 : limiter.permits.getQueueLength();
+    }
+
+    // for tests
+    static int getAvailablePermits(String url, String user)
+    {
+        JdbcConnectionLimiter limiter = limiters.get(buildKey(url, user));
+        return limiter == null ? 0 : limiter.permits.availablePermits();
+    }
+
+    static String buildKey(String url, String user)
+    {
+        Matcher matcher = HOST_PATTERN.matcher(url);
+        String host = matcher.find() ? matcher.group(1) : url;
+        return user == null ? host : user + "@" + host;
+    }
+
+    private Connection connect(int timeoutSeconds, Connector connector) throws SQLException
+    {
+        long startTime = System.nanoTime();
+        try {
+            if (timeoutSeconds <= 0) {
+                permits.acquire();
+            }
+            else if (!permits.tryAcquire(timeoutSeconds, TimeUnit.SECONDS)) {
+                throw new SQLException(String.format(ENGLISH,
+                        "Timed out after waiting %d seconds for one of %d connections to %s",
+                        timeoutSeconds, limit, key));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection to " + key, ex);
+        }
+
+        long waited = System.nanoTime() - startTime;
+        long count = connectionCount.incrementAndGet();
+        long totalWaited = waitNanos.addAndGet(waited);
+        if (waited >= TimeUnit.MILLISECONDS.toNanos(10)) {
+            logger.info(String.format(ENGLISH, "Waited %.2f seconds for one of %d connections to %s (%,d connections waited %.2f seconds in total)",
+                    waited / 1e9, limit, key, count, totalWaited / 1e9));
+        }
+
+        Connection con = null;
+        try {
+            con = connector.connect();
+        } finally {
+            if (con == null) {
+                permits.release();
+            }
+        }
+        if (con != null) {
+            leases.put(con, this);
+        }
+        return con;
+    }
+}
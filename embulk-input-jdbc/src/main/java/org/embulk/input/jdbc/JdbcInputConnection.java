@@ -1,19 +1,30 @@
 package org.embulk.input.jdbc;
 
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientConnectionException;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.embulk.config.ConfigException;
+import org.embulk.input.jdbc.getter.AbstractIncrementalHandler;
 import org.embulk.input.jdbc.getter.ColumnGetter;
+import org.embulk.spi.DataException;
+import org.embulk.spi.PageBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,12 +32,14 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Optional;
 import java.util.TreeMap;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
 
 public class JdbcInputConnection
         implements AutoCloseable
@@ -81,6 +94,62 @@ public class JdbcInputConnection
         return Collections.unmodifiableList(primaryKeys);
     }
 
+    // Returns the leading columns of the primary key and the indexes of the table. The primary key
+    // comes first, unique indexes next, and then the other indexes.
+    public List<String> getIndexedColumns(String tableName) throws SQLException
+    {
+        final LinkedHashSet<String> columnNames = new LinkedHashSet<>();
+        try (ResultSet rs = databaseMetaData.getPrimaryKeys(null, schemaName, tableName)) {
+            while (rs.next()) {
+                if (rs.getShort("KEY_SEQ") == 1) {
+                    columnNames.add(rs.getString("COLUMN_NAME"));
+                }
+            }
+        }
+
+        final ArrayList<String> nonUniqueColumnNames = new ArrayList<>();
+        try (ResultSet rs = databaseMetaData.getIndexInfo(null, schemaName, tableName, false, true)) {
+            while (rs.next()) {
+                String columnName = rs.getString("COLUMN_NAME");
+                if (rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic
+                        || rs.getShort("ORDINAL_POSITION") != 1 || columnName == null) {
+                    continue;
+                }
+                if (rs.getBoolean("NON_UNIQUE")) {
+                    nonUniqueColumnNames.add(columnName);
+                }
+                else {
+                    columnNames.add(columnName);
+                }
+            }
+        }
+        columnNames.addAll(nonUniqueColumnNames);
+        return Collections.unmodifiableList(new ArrayList<>(columnNames));
+    }
+
+    // Returns the estimated number of rows of the table without scanning the table.
+    public Optional<Long> estimateRowCount(String tableName) throws SQLException
+    {
+        try (ResultSet rs = databaseMetaData.getIndexInfo(null, schemaName, tableName, false, true)) {
+            while (rs.next()) {
+                if (rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) {
+                    long rows = rs.getLong("CARDINALITY");
+                    if (!rs.wasNull()) {
+                        return Optional.of(rows);
+                    }
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Returns how many seconds this replica lags behind the primary, 0 if this isn't a replica,
+    // or empty if the replication is stopped.
+    public Optional<Long> getReplicationLagSeconds() throws SQLException
+    {
+        throw new ConfigException("replica_max_lag is not supported by this database");
+    }
+
     protected JdbcSchema getSchemaOfResultMetadata(ResultSetMetaData metadata) throws SQLException
     {
         final ArrayList<JdbcColumn> columns = new ArrayList<>();
@@ -123,7 +192,8 @@ public class JdbcInputConnection
         }
     }
 
-    public BatchSelect newSelectCursor(PreparedQuery preparedQuery,
+    // for subclasses to return a PageBatchSelect instead of a BatchSelect
+    public SelectCursor newSelectCursor(PreparedQuery preparedQuery,
             List<ColumnGetter> getters,
             int fetchRows, int queryTimeout) throws SQLException
     {
@@ -148,6 +218,78 @@ public class JdbcInputConnection
         return new SingleSelect(stmt);
     }
 
+    // Reads the query in chunks of fetchRows rows ordered by the key columns. keyColumns must be
+    // unique and non-null because each chunk starts after the last key of the previous chunk.
+    public BatchSelect newKeysetSelectCursor(PreparedQuery preparedQuery,
+            List<ColumnGetter> getters, JdbcSchema querySchema, List<String> keyColumns,
+            int fetchRows, int queryTimeout) throws SQLException
+    {
+        return newKeysetSelectCursor(preparedQuery, getters, querySchema, keyColumns, Optional.<List<JsonNode>>empty(),
+                fetchRows, queryTimeout);
+    }
+
+    // Same with above but the first chunk starts after startKey if it's present
+    public BatchSelect newKeysetSelectCursor(PreparedQuery preparedQuery,
+            List<ColumnGetter> getters, JdbcSchema querySchema, List<String> keyColumns,
+            Optional<List<JsonNode>> startKey, int fetchRows, int queryTimeout) throws SQLException
+    {
+        String rawQuery = truncateStatementDelimiter(preparedQuery.getQuery());
+
+        StringBuilder orderBy = new StringBuilder();
+        buildIncrementalOrderTo(orderBy, querySchema, keyColumns);
+
+        StringBuilder condition = new StringBuilder();
+        List<JsonNode> keyValues = startKey.orElse(Collections.nCopies(keyColumns.size(), (JsonNode) NullNode.getInstance()));
+        List<JdbcLiteral> keyParameters = buildIncrementalConditionTo(condition, querySchema, keyColumns, keyValues);
+        final ArrayList<Integer> keyParameterColumnIndexes = new ArrayList<>();
+        for (JdbcLiteral literal : keyParameters) {
+            keyParameterColumnIndexes.add(literal.getColumnIndex());
+        }
+
+        String firstQuery = buildKeysetQuery(rawQuery, Optional.<String>empty(), orderBy.toString(), fetchRows);
+        String nextQuery = buildKeysetQuery(rawQuery, Optional.of(condition.toString()), orderBy.toString(), fetchRows);
+        logger.info("SQL: " + firstQuery);
+        logger.info("SQL: " + nextQuery);
+        if (!preparedQuery.getParameters().isEmpty()) {
+            logger.info("Parameters: {}", preparedQuery.getParameters());
+        }
+        if (startKey.isPresent()) {
+            logger.info("Starting after key: {}", startKey.get());
+        }
+
+        PreparedStatement firstStatement = connection.prepareStatement(firstQuery);
+        PreparedStatement nextStatement;
+        try {
+            nextStatement = connection.prepareStatement(nextQuery);
+        } catch (SQLException ex) {
+            firstStatement.close();
+            throw ex;
+        }
+        for (PreparedStatement stmt : Arrays.asList(firstStatement, nextStatement)) {
+            stmt.setFetchSize(fetchRows);
+            stmt.setQueryTimeout(queryTimeout);
+        }
+        return new KeysetSelect(firstStatement, nextStatement, getters, querySchema,
+                preparedQuery.getParameters(), Collections.unmodifiableList(keyParameterColumnIndexes),
+                startKey.isPresent() ? Optional.of(keyParameters) : Optional.<List<JdbcLiteral>>empty());
+    }
+
+    // Builds a query that reads the first limit rows of rawQuery after keyCondition in the order
+    // of orderBy. Dialects override this to use LIMIT or TOP instead of FETCH FIRST.
+    protected String buildKeysetQuery(String rawQuery, Optional<String> keyCondition, String orderBy, int limit)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("SELECT * FROM (");
+        sb.append(rawQuery);
+        sb.append(") embulk_keyset_");
+        if (keyCondition.isPresent()) {
+            sb.append(" WHERE ").append(keyCondition.get());
+        }
+        sb.append(" ORDER BY ").append(orderBy);
+        sb.append(" FETCH FIRST ").append(limit).append(" ROWS ONLY");
+        return sb.toString();
+    }
+
     protected void prepareParameters(PreparedStatement stmt, List<ColumnGetter> getters,
             List<JdbcLiteral> parameters)
         throws SQLException
@@ -160,15 +302,33 @@ public class JdbcInputConnection
         }
     }
 
-    public interface BatchSelect
+    // A running query. The rows are read by BatchSelect or PageBatchSelect.
+    public interface SelectCursor
             extends AutoCloseable
     {
-        public ResultSet fetch() throws SQLException;
+        // Cancels the running query to stop reading the rest of the rows
+        public default void cancel() throws SQLException
+        {
+        }
 
         @Override
         public void close() throws SQLException;
     }
 
+    public interface BatchSelect
+            extends SelectCursor
+    {
+        public ResultSet fetch() throws SQLException;
+    }
+
+    // A cursor that adds rows to PageBuilder by itself instead of returning a ResultSet
+    public interface PageBatchSelect
+            extends SelectCursor
+    {
+        // Returns the number of added rows, or 0 if no rows remain
+        public long fetch(PageBuilder pageBuilder) throws SQLException;
+    }
+
     public class SingleSelect
             implements BatchSelect
     {
@@ -196,16 +356,170 @@ public class JdbcInputConnection
             return rs;
         }
 
+        @Override
+        public void cancel() throws SQLException
+        {
+            fetchStatement.cancel();
+        }
+
         public void close() throws SQLException
         {
             // TODO close?
         }
     }
 
+    // Runs the first statement once, then the next statement for each chunk with the last key of
+    // the previous chunk. The getters still hold the values of the last row when the next chunk is
+    // fetched because the previous ResultSet has been read to the end. If the start key is present,
+    // the next statement runs with it instead of the first statement.
+    public class KeysetSelect
+            implements BatchSelect
+    {
+        private final PreparedStatement firstStatement;
+        private final PreparedStatement nextStatement;
+        private final List<ColumnGetter> getters;
+        private final JdbcSchema querySchema;
+        private final List<JdbcLiteral> parameters;
+        private final List<Integer> keyParameterColumnIndexes;
+        private final Optional<List<JdbcLiteral>> startKeyParameters;
+        private PreparedStatement runningStatement = null;
+
+        public KeysetSelect(PreparedStatement firstStatement, PreparedStatement nextStatement,
+                List<ColumnGetter> getters, JdbcSchema querySchema,
+                List<JdbcLiteral> parameters, List<Integer> keyParameterColumnIndexes,
+                Optional<List<JdbcLiteral>> startKeyParameters)
+        {
+            this.firstStatement = firstStatement;
+            this.nextStatement = nextStatement;
+            this.getters = getters;
+            this.querySchema = querySchema;
+            this.parameters = parameters;
+            this.keyParameterColumnIndexes = keyParameterColumnIndexes;
+            this.startKeyParameters = startKeyParameters;
+        }
+
+        public ResultSet fetch() throws SQLException
+        {
+            long startTime = System.currentTimeMillis();
+
+            ResultSet rs;
+            if (runningStatement == null && !startKeyParameters.isPresent()) {
+                prepareParameters(firstStatement, getters, parameters);
+                runningStatement = firstStatement;
+                rs = firstStatement.executeQuery();
+            }
+            else {
+                final ArrayList<JdbcLiteral> params = new ArrayList<>(parameters);
+                if (runningStatement == null) {
+                    params.addAll(startKeyParameters.get());
+                }
+                else {
+                    for (int columnIndex : keyParameterColumnIndexes) {
+                        params.add(new JdbcLiteral(columnIndex, encodeLastKey(columnIndex)));
+                    }
+                }
+                prepareParameters(nextStatement, getters, params);
+                runningStatement = nextStatement;
+                rs = nextStatement.executeQuery();
+            }
+
+            double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+            logger.info(String.format("> %.2f seconds", seconds));
+            return rs;
+        }
+
+        private JsonNode encodeLastKey(int columnIndex)
+        {
+            JsonNode value = getters.get(columnIndex).encodeToJson();
+            if (value == null || value.isNull()) {
+                throw new DataException(String.format(Locale.ENGLISH,
+                            "keyset_columns can't include null values but the last row of a chunk is null at column '%s'",
+                            querySchema.getColumnName(columnIndex)));
+            }
+            return value;
+        }
+
+        @Override
+        public void cancel() throws SQLException
+        {
+            if (runningStatement != null) {
+                runningStatement.cancel();
+            }
+        }
+
+        public void close() throws SQLException
+        {
+            try {
+                firstStatement.close();
+            } finally {
+                nextStatement.close();
+            }
+        }
+    }
+
+    // Whether the query failed by socket_timeout, the query timeout or the statement timeout of the
+    // database. The connection may be broken or its transaction may be aborted after that.
+    public boolean isQueryTimeout(SQLException ex)
+    {
+        if (ex instanceof SQLTimeoutException) {
+            return true;
+        }
+        if (ex.getSQLState() != null) {
+            switch (ex.getSQLState()) {
+            case "57014":  // query_canceled of PostgreSQL
+            case "70100":  // ER_QUERY_INTERRUPTED of MySQL
+            case "HYT00":  // timeout expired
+            case "HY008":  // operation canceled
+                return true;
+            default:
+                break;
+            }
+        }
+        for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Whether the query failed by a lost connection, a failover or a serialization failure. The
+    // query may succeed if it runs again by a new connection.
+    public boolean isRetryable(SQLException ex)
+    {
+        if (ex instanceof SQLRecoverableException
+                || ex instanceof SQLTransientConnectionException
+                || ex instanceof SQLTransactionRollbackException) {
+            return true;
+        }
+        String sqlState = ex.getSQLState();
+        if (sqlState != null) {
+            if (sqlState.startsWith("08")) {  // connection exception
+                return true;
+            }
+            switch (sqlState) {
+            case "40001":  // serialization failure
+            case "40P01":  // deadlock_detected of PostgreSQL
+            case "57P01":  // admin_shutdown of PostgreSQL
+            case "57P02":  // crash_shutdown of PostgreSQL
+            case "57P03":  // cannot_connect_now of PostgreSQL
+                return true;
+            default:
+                break;
+            }
+        }
+        for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void close() throws SQLException
     {
-        connection.close();
+        JdbcConnectionLimiter.close(connection);
     }
 
     protected void executeUpdate(String sql) throws SQLException
@@ -233,12 +547,40 @@ public class JdbcInputConnection
     public String buildSelectQuery(String tableName,
             Optional<String> selectExpression, Optional<String> whereCondition,
             Optional<String> orderByExpression) throws SQLException
+    {
+        return buildSelectQueryFrom(buildTableName(tableName),
+                selectExpression, whereCondition, orderByExpression);
+    }
+
+    // Builds a SELECT query that reads only a physical partition returned by getTablePartitions.
+    public String buildTablePartitionSelectQuery(String tableName, String partitionName,
+            Optional<String> selectExpression, Optional<String> whereCondition,
+            Optional<String> orderByExpression) throws SQLException
+    {
+        return buildSelectQueryFrom(buildTablePartitionName(tableName, partitionName),
+                selectExpression, whereCondition, orderByExpression);
+    }
+
+    // Returns physical partitions of the table to read each of them by a task.
+    public List<String> getTablePartitions(String tableName) throws SQLException
+    {
+        throw new ConfigException("partition_type 'native' is not supported by this database");
+    }
+
+    protected String buildTablePartitionName(String tableName, String partitionName)
+    {
+        throw new ConfigException("partition_type 'native' is not supported by this database");
+    }
+
+    private String buildSelectQueryFrom(String fromExpression,
+            Optional<String> selectExpression, Optional<String> whereCondition,
+            Optional<String> orderByExpression)
     {
         StringBuilder sb = new StringBuilder();
 
         sb.append("SELECT ");
         sb.append(selectExpression.orElse("*"));
-        sb.append(" FROM ").append(buildTableName(tableName));
+        sb.append(" FROM ").append(fromExpression);
 
         if (whereCondition.isPresent()) {
             sb.append(" WHERE ").append(whereCondition.get());
@@ -251,6 +593,71 @@ public class JdbcInputConnection
         return sb.toString();
     }
 
+    // Returns a condition that selects rows whose hash value of the column modulo partitionCount is partitionIndex.
+    public String buildHashPartitionCondition(String columnName,
+            int partitionCount, int partitionIndex) throws SQLException
+    {
+        throw new ConfigException("partition_type 'hash' is not supported by this database");
+    }
+
+    // Returns ascending values of the integer column that split the rows of the table into
+    // partitionCount parts of roughly the same number of rows. The values are estimated from
+    // statistics of the database without scanning the table. Returns an empty list if the
+    // statistics are not available.
+    public List<Long> estimatePartitionBounds(String tableName, String columnName,
+            int partitionCount) throws SQLException
+    {
+        return Collections.emptyList();
+    }
+
+    // Returns a query that returns the minimum value of each of partitionCount buckets of the
+    // column in ascending order. The buckets are computed from about samplePercent percent of the
+    // rows of the table instead of sorting all rows. This is used if estimatePartitionBounds
+    // returns nothing. Returns empty if the database can't sample tables. Then, the partitions
+    // are split by the minimum and the maximum values as partition_type 'range'.
+    public Optional<String> buildQuantileSampleQuery(String tableName, Optional<String> whereCondition,
+            String columnName, int partitionCount, double samplePercent) throws SQLException
+    {
+        return Optional.empty();
+    }
+
+    // for subclasses to build the query of buildQuantileSampleQuery from a sampled table
+    protected String buildQuantileQueryFrom(String fromExpression, Optional<String> whereCondition,
+            String columnName, int partitionCount)
+    {
+        String quotedColumnName = quoteIdentifierString(columnName);
+        String condition = quotedColumnName + " IS NOT NULL";
+        if (whereCondition.isPresent()) {
+            condition = "(" + whereCondition.get() + ") AND " + condition;
+        }
+        return String.format(Locale.ENGLISH,
+                "SELECT MIN(%s) FROM (SELECT %s, NTILE(%d) OVER (ORDER BY %s) AS embulk_bucket_"
+                + " FROM %s WHERE %s) embulk_buckets_"
+                + " GROUP BY embulk_bucket_ ORDER BY 1",
+                quotedColumnName, quotedColumnName, partitionCount, quotedColumnName,
+                fromExpression, condition);
+    }
+
+    // Picks partition bounds from a histogram. fractions are the ratio of the number of rows
+    // whose values are less than each of values.
+    protected static List<Long> pickPartitionBounds(List<Long> values, List<Double> fractions, int partitionCount)
+    {
+        final ArrayList<Long> bounds = new ArrayList<>();
+        int next = 1;
+        for (int i = 0; i < values.size() && next < partitionCount; i++) {
+            if (fractions.get(i) < (double) next / partitionCount) {
+                continue;
+            }
+            if (bounds.isEmpty() || bounds.get(bounds.size() - 1) < values.get(i)) {
+                bounds.add(values.get(i));
+            }
+            while (next < partitionCount && fractions.get(i) >= (double) next / partitionCount) {
+                next++;
+            }
+        }
+        return Collections.unmodifiableList(bounds);
+    }
+
     public PreparedQuery rebuildIncrementalQuery(String tableName,
             Optional<String> selectExpression, Optional<String> whereCondition,
             JdbcSchema querySchema,
@@ -320,6 +727,76 @@ public class JdbcInputConnection
         return new PreparedQuery(sb.toString(), parameters);
     }
 
+    public String wrapPartitionQuery(String rawQuery, String selectExpression,
+            Optional<String> partitionCondition) throws SQLException
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("SELECT ").append(selectExpression);
+        sb.append(" FROM (");
+        sb.append(truncateStatementDelimiter(rawQuery));
+        sb.append(") embulk_partition_");
+
+        if (partitionCondition.isPresent()) {
+            sb.append(" WHERE ").append(partitionCondition.get());
+        }
+
+        return sb.toString();
+    }
+
+    public List<Object> selectSingleRow(String query) throws SQLException
+    {
+        logger.info("SQL: " + query);
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery(query)) {
+            if (!rs.next()) {
+                return Collections.emptyList();
+            }
+            final ArrayList<Object> values = new ArrayList<>();
+            for (int i = 0; i < rs.getMetaData().getColumnCount(); i++) {
+                values.add(rs.getObject(i + 1));  // JDBC column index begins from 1
+            }
+            return Collections.unmodifiableList(values);
+        }
+    }
+
+    // Returns values of the first column of all rows.
+    public List<Object> selectSingleColumn(String query) throws SQLException
+    {
+        logger.info("SQL: " + query);
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery(query)) {
+            final ArrayList<Object> values = new ArrayList<>();
+            while (rs.next()) {
+                values.add(rs.getObject(1));
+            }
+            return Collections.unmodifiableList(values);
+        }
+    }
+
+    // same with selectSingleRow but values are encoded by the handler. NULL is returned as null.
+    public List<JsonNode> selectSingleRowAsJson(String query, AbstractIncrementalHandler handler) throws SQLException
+    {
+        logger.info("SQL: " + query);
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery(query)) {
+            if (!rs.next()) {
+                return Collections.emptyList();
+            }
+            final ArrayList<JsonNode> values = new ArrayList<>();
+            for (int i = 0; i < rs.getMetaData().getColumnCount(); i++) {
+                int index = i + 1;  // JDBC column index begins from 1
+                if (rs.getObject(index) == null) {
+                    values.add(null);
+                }
+                else {
+                    values.add(handler.fetchAndEncodeToJson(rs, index));
+                }
+            }
+            return Collections.unmodifiableList(values);
+        }
+    }
+
     private List<JdbcLiteral> buildIncrementalConditionTo(
             StringBuilder sb,
             JdbcSchema querySchema,
@@ -362,7 +839,7 @@ public class JdbcInputConnection
             throws SQLException
     {
         Optional<Integer> index = schema.findColumn(incrementalColumn);
-        // must be present because already checked in AbstractJdbcInputPlugin.findIncrementalColumnIndexes .
+        // must be present because already checked in AbstractJdbcInputPlugin.findColumnIndexes .
         return index.get().intValue();
     }
 
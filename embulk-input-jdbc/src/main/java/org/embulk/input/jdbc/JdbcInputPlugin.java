@@ -84,14 +84,14 @@ public class JdbcInputPlugin
             throw new RuntimeException(ex);
         }
 
-        Connection con = driver.connect(t.getUrl(), props);
+        Connection con = connect(t, t.getUrl(), props, () -> driver.connect(t.getUrl(), props));
         try {
             JdbcInputConnection c = new JdbcInputConnection(con, t.getSchema().orElse(null));
             con = null;
             return c;
         } finally {
             if (con != null) {
-                con.close();
+                JdbcConnectionLimiter.close(con);
             }
         }
     }
@@ -0,0 +1,91 @@
+package org.embulk.input.jdbc;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class JdbcPartition
+{
+    private final Optional<String> tablePartition;
+    private final Optional<String> condition;
+    private final List<JdbcLiteral> parameters;
+    private final Optional<JdbcPartitionRange> range;
+
+    public JdbcPartition(String condition, List<JdbcLiteral> parameters)
+    {
+        this(Optional.<String>empty(), Optional.of(condition), parameters, Optional.<JdbcPartitionRange>empty());
+    }
+
+    public JdbcPartition(String condition, List<JdbcLiteral> parameters, JdbcPartitionRange range)
+    {
+        this(Optional.<String>empty(), Optional.of(condition), parameters, Optional.of(range));
+    }
+
+    public JdbcPartition(String tablePartition)
+    {
+        this(Optional.of(tablePartition), Optional.<String>empty(), Collections.<JdbcLiteral>emptyList(),
+                Optional.<JdbcPartitionRange>empty());
+    }
+
+    @JsonCreator
+    public JdbcPartition(
+            @JsonProperty("table_partition") Optional<String> tablePartition,
+            @JsonProperty("condition") Optional<String> condition,
+            @JsonProperty("parameters") List<JdbcLiteral> parameters,
+            @JsonProperty("range") Optional<JdbcPartitionRange> range)
+    {
+        this.tablePartition = tablePartition;
+        this.condition = condition;
+        this.parameters = parameters;
+        this.range = range;
+    }
+
+    // Physical partition of the table returned by JdbcInputConnection.getTablePartitions.
+    @JsonProperty("table_partition")
+    public Optional<String> getTablePartition()
+    {
+        return tablePartition;
+    }
+
+    // WHERE condition of this partition. "?" placeholders are bound to parameters in order.
+    @JsonProperty("condition")
+    public Optional<String> getCondition()
+    {
+        return condition;
+    }
+
+    @JsonProperty("parameters")
+    public List<JdbcLiteral> getParameters()
+    {
+        return parameters;
+    }
+
+    // Integer range of partition_type 'range' and 'quantile'
+    @JsonProperty("range")
+    public Optional<JdbcPartitionRange> getRange()
+    {
+        return range;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        if (tablePartition.isPresent()) {
+            sb.append("partition ").append(tablePartition.get());
+        }
+        if (condition.isPresent()) {
+            if (sb.length() > 0) {
+                sb.append(" ");
+            }
+            sb.append(condition.get());
+        }
+        if (!parameters.isEmpty()) {
+            sb.append(" ").append(parameters);
+        }
+        return sb.toString();
+    }
+}
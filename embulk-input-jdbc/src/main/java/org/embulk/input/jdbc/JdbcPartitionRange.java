@@ -0,0 +1,133 @@
+package org.embulk.input.jdbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+// Integer range of a partition. A range without the lower or upper bound is open at the side.
+// Partitions are split by their ranges if partition_split_timeout is set.
+public class JdbcPartitionRange
+{
+    private final String quotedColumnName;
+    private final int columnIndex;
+    private final Optional<Long> lower;
+    private final Optional<Long> upper;
+
+    @JsonCreator
+    public JdbcPartitionRange(
+            @JsonProperty("quoted_column_name") String quotedColumnName,
+            @JsonProperty("column_index") int columnIndex,
+            @JsonProperty("lower") Optional<Long> lower,
+            @JsonProperty("upper") Optional<Long> upper)
+    {
+        this.quotedColumnName = quotedColumnName;
+        this.columnIndex = columnIndex;
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    @JsonProperty("quoted_column_name")
+    public String getQuotedColumnName()
+    {
+        return quotedColumnName;
+    }
+
+    @JsonProperty("column_index")
+    public int getColumnIndex()
+    {
+        return columnIndex;
+    }
+
+    // inclusive
+    @JsonProperty("lower")
+    public Optional<Long> getLower()
+    {
+        return lower;
+    }
+
+    // exclusive
+    @JsonProperty("upper")
+    public Optional<Long> getUpper()
+    {
+        return upper;
+    }
+
+    // WHERE condition with "?" placeholders bound to getParameters()
+    public String getCondition()
+    {
+        return buildCondition("?", "?");
+    }
+
+    public List<JdbcLiteral> getParameters()
+    {
+        final ArrayList<JdbcLiteral> parameters = new ArrayList<>();
+        if (lower.isPresent()) {
+            parameters.add(new JdbcLiteral(columnIndex, JsonNodeFactory.instance.numberNode(lower.get())));
+        }
+        if (upper.isPresent()) {
+            parameters.add(new JdbcLiteral(columnIndex, JsonNodeFactory.instance.numberNode(upper.get())));
+        }
+        return Collections.unmodifiableList(parameters);
+    }
+
+    // WHERE condition with the bounds embedded for queries without parameters
+    public String getLiteralCondition()
+    {
+        return buildCondition(lower.map(String::valueOf).orElse(null), upper.map(String::valueOf).orElse(null));
+    }
+
+    private String buildCondition(String lowerValue, String upperValue)
+    {
+        if (lower.isPresent() && upper.isPresent()) {
+            return quotedColumnName + " >= " + lowerValue + " AND " + quotedColumnName + " < " + upperValue;
+        }
+        else if (lower.isPresent()) {
+            return quotedColumnName + " >= " + lowerValue;
+        }
+        else if (upper.isPresent()) {
+            return quotedColumnName + " < " + upperValue;
+        }
+        else {
+            return quotedColumnName + " IS NOT NULL";
+        }
+    }
+
+    // Returns the rest of this range after the key, or empty if nothing remains.
+    public Optional<JdbcPartitionRange> after(long key)
+    {
+        if (key == Long.MAX_VALUE || (upper.isPresent() && key + 1 >= upper.get())) {
+            return Optional.empty();
+        }
+        return Optional.of(new JdbcPartitionRange(quotedColumnName, columnIndex, Optional.of(key + 1), upper));
+    }
+
+    // Whether the keys between min and max (inclusive) can be split into two halves that have
+    // minRange keys at least
+    public static boolean isSplittable(long min, long max, long minRange)
+    {
+        long width = max - min;
+        return width < 0 || width >= 2 * minRange - 1;  // width < 0 if it overflows
+    }
+
+    // Splits this range at the middle of min and max (inclusive) that are the minimum and the
+    // maximum keys found in this range. Open sides stay open.
+    public List<JdbcPartitionRange> splitHalves(long min, long max)
+    {
+        long mid = (min >> 1) + (max >> 1) + (min & max & 1) + 1;
+        return Collections.unmodifiableList(Arrays.asList(
+                    new JdbcPartitionRange(quotedColumnName, columnIndex, lower, Optional.of(mid)),
+                    new JdbcPartitionRange(quotedColumnName, columnIndex, Optional.of(mid), upper)));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[" + lower.map(String::valueOf).orElse("") + ", " + upper.map(String::valueOf).orElse("") + ")";
+    }
+}
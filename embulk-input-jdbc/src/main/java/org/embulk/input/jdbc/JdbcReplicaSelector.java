@@ -0,0 +1,60 @@
+package org.embulk.input.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.embulk.config.ConfigException;
+
+// Orders replicas to try for a task. least_recently_used shares the state between the tasks
+// running in the same JVM.
+public class JdbcReplicaSelector
+{
+    private static final Map<String, Long> lastUsed = new ConcurrentHashMap<>();
+    private static final AtomicLong clock = new AtomicLong();
+
+    private JdbcReplicaSelector()
+    {
+    }
+
+    public static void validate(String selection)
+    {
+        switch (selection) {
+        case "round_robin":
+        case "least_recently_used":
+            break;
+        default:
+            throw new ConfigException(String.format("Unknown replica_selection '%s'. It must be 'round_robin' or 'least_recently_used'",
+                        selection));
+        }
+    }
+
+    public static List<JdbcTarget> order(List<JdbcTarget> replicas, String selection, int taskIndex)
+    {
+        final ArrayList<JdbcTarget> ordered = new ArrayList<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            ordered.add(replicas.get((taskIndex + i) % replicas.size()));
+        }
+        if (selection.equals("least_recently_used")) {
+            // stable sort keeps the round-robin order between replicas that were never used
+            Collections.sort(ordered, Comparator.comparingLong(replica -> lastUsed.getOrDefault(replica.toString(), 0L)));
+        }
+        return Collections.unmodifiableList(ordered);
+    }
+
+    // lag is empty if the replication is stopped
+    public static boolean isLagAcceptable(Optional<Long> lag, int maxLagSeconds)
+    {
+        return lag.isPresent() && lag.get() <= maxLagSeconds;
+    }
+
+    public static void markUsed(JdbcTarget replica)
+    {
+        lastUsed.put(replica.toString(), clock.incrementAndGet());
+    }
+}
@@ -0,0 +1,12 @@
+package org.embulk.input.jdbc;
+
+import java.sql.SQLException;
+
+// A snapshot of the database shared by the tasks of a transaction. It's closed after all
+// tasks finish.
+public interface JdbcSnapshot
+        extends AutoCloseable
+{
+    @Override
+    public void close() throws SQLException;
+}
@@ -0,0 +1,84 @@
+package org.embulk.input.jdbc;
+
+import java.util.List;
+import java.util.Optional;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+
+// A database to read with the same query. Options that are not set are taken from the plugin's
+// options.
+@JsonInclude(JsonInclude.Include.NON_ABSENT)
+public class JdbcTarget
+{
+    private final Optional<String> host;
+    private final Optional<Integer> port;
+    private final Optional<String> database;
+    private final Optional<String> schema;
+    private final Optional<List<JsonNode>> lastRecord;
+
+    @JsonCreator
+    public JdbcTarget(
+            @JsonProperty("host") Optional<String> host,
+            @JsonProperty("port") Optional<Integer> port,
+            @JsonProperty("database") Optional<String> database,
+            @JsonProperty("schema") Optional<String> schema,
+            @JsonProperty("last_record") Optional<List<JsonNode>> lastRecord)
+    {
+        this.host = host;
+        this.port = port;
+        this.database = database;
+        this.schema = schema;
+        this.lastRecord = lastRecord;
+    }
+
+    @JsonProperty("host")
+    public Optional<String> getHost()
+    {
+        return host;
+    }
+
+    @JsonProperty("port")
+    public Optional<Integer> getPort()
+    {
+        return port;
+    }
+
+    @JsonProperty("database")
+    public Optional<String> getDatabase()
+    {
+        return database;
+    }
+
+    @JsonProperty("schema")
+    public Optional<String> getSchema()
+    {
+        return schema;
+    }
+
+    // last_record of incremental loading of this target
+    @JsonProperty("last_record")
+    public Optional<List<JsonNode>> getLastRecord()
+    {
+        return lastRecord;
+    }
+
+    public JdbcTarget withLastRecord(List<JsonNode> lastRecord)
+    {
+        return new JdbcTarget(host, port, database, schema, Optional.of(lastRecord));
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(host.orElse("")).append(port.isPresent() ? ":" + port.get() : "");
+        sb.append("/").append(database.orElse(""));
+        if (schema.isPresent()) {
+            sb.append(" schema ").append(schema.get());
+        }
+        return sb.toString();
+    }
+}
@@ -27,9 +27,20 @@ public abstract class AbstractIncrementalHandler implements ColumnGetter
     public void getAndSet(ResultSet from, int fromIndex,
             Column toColumn) throws SQLException
     {
+        sniff(from, fromIndex);
         next.getAndSet(from, fromIndex, toColumn);
     }
 
+    // Reads the value without setting it to the page, and returns it in the format of encodeToJson.
+    // The returned value can be passed to decodeFromJsonTo.
+    public JsonNode fetchAndEncodeToJson(ResultSet from, int fromIndex) throws SQLException
+    {
+        sniff(from, fromIndex);
+        return encodeToJson();
+    }
+
+    protected abstract void sniff(ResultSet from, int fromIndex) throws SQLException;
+
     @Override
     public Type getToType()
     {
@@ -12,7 +12,6 @@ import java.util.Optional;
 
 import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
-import org.embulk.spi.Column;
 import org.embulk.spi.Exec;
 import org.embulk.util.config.Task;
 import org.embulk.util.timestamp.TimestampFormatter;
@@ -34,17 +33,13 @@ public class TimestampWithTimeZoneIncrementalHandler
     }
 
     @Override
-    public void getAndSet(ResultSet from, int fromIndex,
-            Column toColumn) throws SQLException
+    protected void sniff(ResultSet from, int fromIndex) throws SQLException
     {
-        // sniff the value
         Timestamp timestamp = from.getTimestamp(fromIndex);
         if (timestamp != null) {
             epochSecond = timestamp.getTime() / 1000;
             nano = timestamp.getNanos();
         }
-
-        super.getAndSet(from, fromIndex, toColumn);
     }
 
     @Override
@@ -9,7 +9,6 @@ import java.time.LocalDateTime;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.embulk.config.ConfigException;
-import org.embulk.spi.Column;
 import static java.util.Locale.ENGLISH;
 
 public class TimestampWithoutTimeZoneIncrementalHandler
@@ -26,16 +25,12 @@ public class TimestampWithoutTimeZoneIncrementalHandler
     }
 
     @Override
-    public void getAndSet(ResultSet from, int fromIndex,
-            Column toColumn) throws SQLException
+    protected void sniff(ResultSet from, int fromIndex) throws SQLException
     {
-        // sniff the value
         Timestamp timestamp = from.getTimestamp(fromIndex);
         if (timestamp != null) {
             this.dateTime = timestamp;
         }
-
-        super.getAndSet(from, fromIndex, toColumn);
     }
 
     @Override
@@ -0,0 +1,138 @@
+package org.embulk.input.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.embulk.config.ConfigException;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class JdbcChunkQueueTest
+{
+    @Test
+    public void testOwnChunksFirst()
+    {
+        try (JdbcChunkQueue queue = JdbcChunkQueue.register(6, 3)) {
+            assertThat(queue.poll(0), is(0));
+            assertThat(queue.poll(1), is(2));
+            assertThat(queue.poll(2), is(4));
+            assertThat(queue.poll(0), is(1));
+            assertThat(queue.poll(1), is(3));
+            assertThat(queue.poll(2), is(5));
+            assertThat(queue.poll(0), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void testStealFromTail()
+    {
+        try (JdbcChunkQueue queue = JdbcChunkQueue.register(9, 3)) {
+            // task 0 has 0, 1, 2, task 1 has 3, 4, 5 and task 2 has 6, 7, 8
+            assertThat(queue.poll(0), is(0));
+            assertThat(queue.poll(0), is(1));
+            assertThat(queue.poll(0), is(2));
+            // task 0 steals from the tail of the next task first
+            assertThat(queue.poll(0), is(5));
+            assertThat(queue.poll(0), is(4));
+            // task 1 still reads its own chunks from the head
+            assertThat(queue.poll(1), is(3));
+            // task 1 has no chunks. It steals from task 2 and then task 0
+            assertThat(queue.poll(1), is(8));
+            assertThat(queue.poll(2), is(6));
+            assertThat(queue.poll(2), is(7));
+            assertThat(queue.poll(2), is(nullValue()));
+            assertThat(queue.poll(1), is(nullValue()));
+            assertThat(queue.poll(0), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void testUnevenChunks()
+    {
+        try (JdbcChunkQueue queue = JdbcChunkQueue.register(5, 3)) {
+            // task 0 has 0, 1, task 1 has 2, 3 and task 2 has 4
+            assertThat(queue.poll(2), is(4));
+            assertThat(queue.poll(2), is(1));
+            assertThat(queue.poll(1), is(2));
+            assertThat(queue.poll(2), is(0));
+            assertThat(queue.poll(2), is(3));
+            assertThat(queue.poll(0), is(nullValue()));
+            assertThat(queue.poll(1), is(nullValue()));
+            assertThat(queue.poll(2), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void testMoreTasksThanChunks()
+    {
+        try (JdbcChunkQueue queue = JdbcChunkQueue.register(2, 4)) {
+            assertThat(queue.poll(3), is(0));
+            assertThat(queue.poll(2), is(1));
+            assertThat(queue.poll(1), is(nullValue()));
+            assertThat(queue.poll(0), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void testEachChunkIsPolledOnce() throws Exception
+    {
+        int taskCount = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(taskCount);
+        try (JdbcChunkQueue queue = JdbcChunkQueue.register(1000, taskCount)) {
+            List<Future<List<Integer>>> results = new ArrayList<>();
+            for (int i = 0; i < taskCount; i++) {
+                final int taskIndex = i;
+                results.add(executor.submit(() -> {
+                    List<Integer> polled = new ArrayList<>();
+                    for (Integer chunk = queue.poll(taskIndex); chunk != null; chunk = queue.poll(taskIndex)) {
+                        polled.add(chunk);
+                    }
+                    return polled;
+                }));
+            }
+
+            List<Integer> chunks = new ArrayList<>();
+            for (Future<List<Integer>> result : results) {
+                chunks.addAll(result.get(10, TimeUnit.SECONDS));
+            }
+            Collections.sort(chunks);
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                expected.add(i);
+            }
+            assertThat(chunks, is(expected));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testGet()
+    {
+        String id;
+        try (JdbcChunkQueue queue = JdbcChunkQueue.register(2, 2)) {
+            id = queue.getId();
+            assertThat(JdbcChunkQueue.get(id), is(sameInstance(queue)));
+        }
+
+        // the queue is removed when the transaction finished, or in the other JVMs
+        try {
+            JdbcChunkQueue.get(id);
+            fail();
+        } catch (ConfigException ex) {
+            assertThat(ex.getMessage(), containsString("partition_chunks requires the local executor"));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.embulk.input.jdbc;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class JdbcConnectionLimiterTest
+{
+    @Rule
+    public TestName testName = new TestName();
+
+    private ExecutorService executor;
+    private String url;
+
+    @Before
+    public void setup()
+    {
+        executor = Executors.newCachedThreadPool();
+        // limiters are shared in the JVM. So, each test uses its own host.
+        url = "jdbc:test://" + testName.getMethodName() + ":1234/db";
+    }
+
+    @After
+    public void teardown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPermitIsReleasedOnce() throws Exception
+    {
+        Connection con = connect(2, 0);
+        assertThat(JdbcConnectionLimiter.getAvailablePermits(url, "user"), is(1));
+
+        JdbcConnectionLimiter.close(con);
+        assertThat(JdbcConnectionLimiter.getAvailablePermits(url, "user"), is(2));
+
+        JdbcConnectionLimiter.close(con);
+        assertThat(JdbcConnectionLimiter.getAvailablePermits(url, "user"), is(2));
+    }
+
+    @Test
+    public void testConnectionIsNotWrapped() throws Exception
+    {
+        Connection driverConnection = newConnection();
+        Connection con = JdbcConnectionLimiter.connect(url, "user", 1, 0, () -> driverConnection);
+        assertThat(con, is(sameInstance(driverConnection)));
+        JdbcConnectionLimiter.close(con);
+    }
+
+    @Test
+    public void testFailedConnectReleasesPermit() throws Exception
+    {
+        try {
+            JdbcConnectionLimiter.connect(url, "user", 1, 0, () -> {
+                throw new SQLException("connection refused");
+            });
+            fail();
+        } catch (SQLException ex) {
+            assertThat(ex.getMessage(), is("connection refused"));
+        }
+        assertThat(JdbcConnectionLimiter.getAvailablePermits(url, "user"), is(1));
+    }
+
+    @Test
+    public void testTimeout() throws Exception
+    {
+        Connection con = connect(1, 0);
+        try {
+            connect(1, 1);
+            fail();
+        } catch (SQLException ex) {
+            assertThat(ex.getMessage(), containsString("Timed out after waiting 1 seconds"));
+        }
+        JdbcConnectionLimiter.close(con);
+        assertThat(JdbcConnectionLimiter.getAvailablePermits(url, "user"), is(1));
+    }
+
+    @Test
+    public void testWaitUntilClosed() throws Exception
+    {
+        Connection con = connect(1, 0);
+        Future<Connection> waiting = executor.submit(() -> connect(1, 0));
+        waitForWaitingCount(1);
+        assertThat(waiting.isDone(), is(false));
+
+        JdbcConnectionLimiter.close(con);
+        JdbcConnectionLimiter.close(waiting.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFifoOrder() throws Exception
+    {
+        Connection con = connect(1, 0);
+        Future<Connection> first = executor.submit(() -> connect(1, 0));
+        waitForWaitingCount(1);
+        Future<Connection> second = executor.submit(() -> connect(1, 0));
+        waitForWaitingCount(2);
+
+        JdbcConnectionLimiter.close(con);
+        Connection firstConnection = first.get(10, TimeUnit.SECONDS);
+        Thread.sleep(200);
+        assertThat(second.isDone(), is(false));
+
+        JdbcConnectionLimiter.close(firstConnection);
+        JdbcConnectionLimiter.close(second.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBuildKey()
+    {
+        assertThat(JdbcConnectionLimiter.buildKey("jdbc:postgresql://localhost:5432/db?ssl=true", "user"), is("user@localhost:5432"));
+        assertThat(JdbcConnectionLimiter.buildKey("jdbc:sqlserver://localhost:1433;databaseName=db", null), is("localhost:1433"));
+    }
+
+    private Connection connect(int limit, int timeoutSeconds) throws SQLException
+    {
+        return JdbcConnectionLimiter.connect(url, "user", limit, timeoutSeconds, () -> newConnection());
+    }
+
+    private void waitForWaitingCount(int count) throws InterruptedException
+    {
+        for (int i = 0; i < 1000; i++) {
+            if (JdbcConnectionLimiter.getWaitingCount(url, "user") == count) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Connections didn't wait");
+    }
+
+    // a connection that does nothing. The methods used by the limiter return void.
+    private static Connection newConnection()
+    {
+        return (Connection) Proxy.newProxyInstance(JdbcConnectionLimiterTest.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                (proxy, method, args) -> null);
+    }
+}
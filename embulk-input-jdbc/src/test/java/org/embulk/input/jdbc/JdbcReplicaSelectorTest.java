@@ -0,0 +1,96 @@
+package org.embulk.input.jdbc;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import org.embulk.config.ConfigException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class JdbcReplicaSelectorTest
+{
+    @Rule
+    public TestName testName = new TestName();
+
+    private JdbcTarget replica1;
+    private JdbcTarget replica2;
+    private JdbcTarget replica3;
+    private List<JdbcTarget> replicas;
+
+    @Before
+    public void setup()
+    {
+        // the last used times are shared in the JVM. So, each test uses its own hosts.
+        replica1 = newReplica("replica1");
+        replica2 = newReplica("replica2");
+        replica3 = newReplica("replica3");
+        replicas = Arrays.asList(replica1, replica2, replica3);
+    }
+
+    @Test
+    public void testRoundRobin()
+    {
+        assertThat(JdbcReplicaSelector.order(replicas, "round_robin", 0), contains(replica1, replica2, replica3));
+        assertThat(JdbcReplicaSelector.order(replicas, "round_robin", 1), contains(replica2, replica3, replica1));
+        assertThat(JdbcReplicaSelector.order(replicas, "round_robin", 5), contains(replica3, replica1, replica2));
+
+        // round_robin ignores the last used times
+        JdbcReplicaSelector.markUsed(replica1);
+        assertThat(JdbcReplicaSelector.order(replicas, "round_robin", 0), contains(replica1, replica2, replica3));
+    }
+
+    @Test
+    public void testLeastRecentlyUsed()
+    {
+        // replicas that were never used keep the round-robin order
+        assertThat(JdbcReplicaSelector.order(replicas, "least_recently_used", 1), contains(replica2, replica3, replica1));
+
+        JdbcReplicaSelector.markUsed(replica2);
+        assertThat(JdbcReplicaSelector.order(replicas, "least_recently_used", 1), contains(replica3, replica1, replica2));
+
+        JdbcReplicaSelector.markUsed(replica3);
+        JdbcReplicaSelector.markUsed(replica1);
+        assertThat(JdbcReplicaSelector.order(replicas, "least_recently_used", 0), contains(replica2, replica3, replica1));
+
+        JdbcReplicaSelector.markUsed(replica2);
+        assertThat(JdbcReplicaSelector.order(replicas, "least_recently_used", 0), contains(replica3, replica1, replica2));
+    }
+
+    @Test
+    public void testLagAcceptable()
+    {
+        assertThat(JdbcReplicaSelector.isLagAcceptable(Optional.of(0L), 10), is(true));
+        assertThat(JdbcReplicaSelector.isLagAcceptable(Optional.of(10L), 10), is(true));
+        assertThat(JdbcReplicaSelector.isLagAcceptable(Optional.of(11L), 10), is(false));
+        assertThat(JdbcReplicaSelector.isLagAcceptable(Optional.of(0L), 0), is(true));
+        // the replication is stopped
+        assertThat(JdbcReplicaSelector.isLagAcceptable(Optional.<Long>empty(), 10), is(false));
+    }
+
+    @Test
+    public void testValidate()
+    {
+        JdbcReplicaSelector.validate("round_robin");
+        JdbcReplicaSelector.validate("least_recently_used");
+        try {
+            JdbcReplicaSelector.validate("random");
+            fail();
+        } catch (ConfigException ex) {
+            assertThat(ex.getMessage(), is("Unknown replica_selection 'random'. It must be 'round_robin' or 'least_recently_used'"));
+        }
+    }
+
+    private JdbcTarget newReplica(String name)
+    {
+        return new JdbcTarget(Optional.of(testName.getMethodName() + "-" + name), Optional.of(5432),
+                Optional.of("db"), Optional.<String>empty(), Optional.empty());
+    }
+}
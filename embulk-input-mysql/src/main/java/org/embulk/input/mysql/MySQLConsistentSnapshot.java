@@ -0,0 +1,76 @@
+package org.embulk.input.mysql;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.embulk.input.jdbc.JdbcSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Connections that started transactions WITH CONSISTENT SNAPSHOT at the same point in time.
+// Each task takes one of them by its task index. Because connections can't be serialized into
+// the task, tasks must run in the same JVM with the transaction.
+public class MySQLConsistentSnapshot
+        implements JdbcSnapshot
+{
+    private static final Logger logger = LoggerFactory.getLogger(MySQLConsistentSnapshot.class);
+
+    private static final Map<String, MySQLConsistentSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    private final String id;
+    private final AtomicReferenceArray<MySQLInputConnection> connections;
+
+    private MySQLConsistentSnapshot(String id, List<MySQLInputConnection> connections)
+    {
+        this.id = id;
+        this.connections = new AtomicReferenceArray<>(connections.toArray(new MySQLInputConnection[0]));
+    }
+
+    public static MySQLConsistentSnapshot register(List<MySQLInputConnection> connections)
+    {
+        MySQLConsistentSnapshot snapshot = new MySQLConsistentSnapshot(UUID.randomUUID().toString(), connections);
+        snapshots.put(snapshot.getId(), snapshot);
+        return snapshot;
+    }
+
+    public static MySQLInputConnection takeConnection(String id, int taskIndex)
+    {
+        MySQLConsistentSnapshot snapshot = snapshots.get(id);
+        MySQLInputConnection con = null;
+        if (snapshot != null && taskIndex < snapshot.connections.length()) {
+            con = snapshot.connections.getAndSet(taskIndex, null);
+        }
+        if (con == null) {
+            throw new IllegalStateException(String.format(
+                        "Connection of the consistent snapshot for task %d is not available. consistent_snapshot requires the local executor.",
+                        taskIndex));
+        }
+        return con;
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        snapshots.remove(id);
+        // closes connections of the tasks that didn't run
+        for (int i = 0; i < connections.length(); i++) {
+            MySQLInputConnection con = connections.getAndSet(i, null);
+            if (con != null) {
+                try {
+                    con.close();
+                } catch (SQLException ex) {
+                    logger.warn("Failed to close a connection of the consistent snapshot", ex);
+                }
+            }
+        }
+    }
+}
@@ -1,13 +1,22 @@
 package org.embulk.input.mysql;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.lang.reflect.Method;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Optional;
 import java.util.TimeZone;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.embulk.config.ConfigException;
 import org.embulk.input.jdbc.JdbcInputConnection;
 import org.embulk.input.jdbc.JdbcLiteral;
 import org.embulk.input.jdbc.getter.ColumnGetter;
@@ -53,6 +62,190 @@ public class MySQLInputConnection
         return new SingleSelect(stmt);
     }
 
+    @Override
+    protected String buildKeysetQuery(String rawQuery, Optional<String> keyCondition, String orderBy, int limit)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("SELECT * FROM (").append(rawQuery).append(") embulk_keyset_");
+        if (keyCondition.isPresent()) {
+            sb.append(" WHERE ").append(keyCondition.get());
+        }
+        sb.append(" ORDER BY ").append(orderBy);
+        sb.append(" LIMIT ").append(limit);
+        return sb.toString();
+    }
+
+    @Override
+    public String buildHashPartitionCondition(String columnName,
+            int partitionCount, int partitionIndex) throws SQLException
+    {
+        // CRC32 returns an unsigned 32-bit integer
+        return String.format(Locale.ENGLISH, "CRC32(%s) %% %d = %d",
+                quoteIdentifierString(columnName), partitionCount, partitionIndex);
+    }
+
+    @Override
+    public List<String> getTablePartitions(String tableName) throws SQLException
+    {
+        // sub-partitions are listed instead of their partitions if they exist
+        String sql = "SELECT COALESCE(SUBPARTITION_NAME, PARTITION_NAME)"
+            + " FROM information_schema.PARTITIONS"
+            + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL"
+            + " ORDER BY PARTITION_ORDINAL_POSITION, SUBPARTITION_ORDINAL_POSITION";
+        logger.info("SQL: " + sql);
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                final ArrayList<String> partitions = new ArrayList<>();
+                while (rs.next()) {
+                    partitions.add(rs.getString(1));
+                }
+                return Collections.unmodifiableList(partitions);
+            }
+        }
+    }
+
+    @Override
+    protected String buildTablePartitionName(String tableName, String partitionName)
+    {
+        return buildTableName(tableName) + " PARTITION (" + quoteIdentifierString(partitionName) + ")";
+    }
+
+    @Override
+    public List<Long> estimatePartitionBounds(String tableName, String columnName,
+            int partitionCount) throws SQLException
+    {
+        // histograms are available since MySQL 8.0 if ANALYZE TABLE ... UPDATE HISTOGRAM is run
+        String sql = "SELECT HISTOGRAM FROM information_schema.COLUMN_STATISTICS"
+            + " WHERE SCHEMA_NAME = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?";
+        logger.info("SQL: " + sql);
+        String histogram;
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, tableName);
+            stmt.setString(2, columnName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return Collections.emptyList();
+                }
+                histogram = rs.getString(1);
+            }
+        } catch (SQLException ex) {
+            logger.info("Histogram is not available: {}", ex.getMessage());
+            return Collections.emptyList();
+        }
+
+        JsonNode buckets;
+        try {
+            buckets = new ObjectMapper().readTree(histogram).get("buckets");
+        } catch (IOException ex) {
+            logger.warn("Failed to parse histogram: {}", histogram, ex);
+            return Collections.emptyList();
+        }
+        if (buckets == null) {
+            return Collections.emptyList();
+        }
+
+        // equi-height buckets are [lower, upper, cumulative frequency, number of distinct values].
+        // singleton buckets are [value, cumulative frequency].
+        final ArrayList<Long> values = new ArrayList<>();
+        final ArrayList<Double> fractions = new ArrayList<>();
+        for (JsonNode bucket : buckets) {
+            int valueIndex = bucket.size() == 4 ? 1 : 0;
+            // values of BIGINT UNSIGNED may exceed the range of long
+            if (!bucket.get(valueIndex).canConvertToLong() || bucket.get(valueIndex).asLong() == Long.MAX_VALUE) {
+                return Collections.emptyList();
+            }
+            values.add(bucket.get(valueIndex).asLong() + 1);
+            fractions.add(bucket.get(valueIndex + 1).asDouble());
+        }
+        return pickPartitionBounds(values, fractions, partitionCount);
+    }
+
+    @Override
+    public Optional<Long> estimateRowCount(String tableName) throws SQLException
+    {
+        // TABLE_ROWS is an estimate on InnoDB
+        String sql = "SELECT TABLE_ROWS FROM information_schema.TABLES"
+            + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?";
+        logger.info("SQL: " + sql);
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return Optional.empty();
+                }
+                long rows = rs.getLong(1);
+                return rs.wasNull() ? Optional.<Long>empty() : Optional.of(rows);
+            }
+        }
+    }
+
+    public void flushTablesWithReadLock() throws SQLException
+    {
+        executeUpdate("FLUSH TABLES WITH READ LOCK");
+    }
+
+    public void unlockTables() throws SQLException
+    {
+        executeUpdate("UNLOCK TABLES");
+    }
+
+    public void startConsistentSnapshot() throws SQLException
+    {
+        // consistent snapshot is available only with REPEATABLE READ
+        executeUpdate("SET SESSION TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+        executeUpdate("START TRANSACTION WITH CONSISTENT SNAPSHOT");
+    }
+
+    public int getMaxConnections() throws SQLException
+    {
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT @@GLOBAL.max_connections")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    public String getGtidExecuted() throws SQLException
+    {
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT @@GLOBAL.gtid_mode, @@GLOBAL.gtid_executed")) {
+            rs.next();
+            if (!"ON".equals(rs.getString(1))) {
+                throw new ConfigException("consistent_snapshot: gtid requires gtid_mode=ON");
+            }
+            return rs.getString(2);
+        }
+    }
+
+    @Override
+    public Optional<Long> getReplicationLagSeconds() throws SQLException
+    {
+        // SHOW SLAVE STATUS is removed by MySQL 8.4 and SHOW REPLICA STATUS is added by 8.0.22.
+        try (Statement stmt = connection.createStatement()) {
+            ResultSet rs;
+            String lagColumn;
+            try {
+                rs = stmt.executeQuery("SHOW REPLICA STATUS");
+                lagColumn = "Seconds_Behind_Source";
+            } catch (SQLException ex) {
+                rs = stmt.executeQuery("SHOW SLAVE STATUS");
+                lagColumn = "Seconds_Behind_Master";
+            }
+            try {
+                if (!rs.next()) {
+                    // not a replica
+                    return Optional.of(0L);
+                }
+                long lag = rs.getLong(lagColumn);
+                // NULL if the replication threads are not running
+                return rs.wasNull() ? Optional.<Long>empty() : Optional.of(lag);
+            } finally {
+                rs.close();
+            }
+        }
+    }
+
     public boolean getUseLegacyDatetimeCode()
     {
         try {
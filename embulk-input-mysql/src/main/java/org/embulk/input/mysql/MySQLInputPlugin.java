@@ -8,12 +8,18 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.embulk.config.ConfigException;
 import org.embulk.input.jdbc.AbstractJdbcInputPlugin;
+import org.embulk.input.jdbc.JdbcConnectionLimiter;
+import org.embulk.input.jdbc.JdbcInputConnection;
+import org.embulk.input.jdbc.JdbcSnapshot;
+import org.embulk.input.jdbc.JdbcTarget;
 import org.embulk.input.jdbc.Ssl;
 import org.embulk.input.jdbc.getter.ColumnGetterFactory;
 import org.embulk.input.mysql.MySQLInputConnection;
@@ -58,6 +64,13 @@ public class MySQLInputPlugin
         @Config("use_legacy_datetime_code")
         @ConfigDefault("false")
         public boolean getUseLegacyDatetimeCode();
+
+        @Config("consistent_snapshot")
+        @ConfigDefault("\"none\"")
+        public String getConsistentSnapshot();
+
+        public Optional<String> getSnapshotId();
+        public void setSnapshotId(Optional<String> snapshotId);
     }
 
     @Override
@@ -70,11 +83,38 @@ public class MySQLInputPlugin
     protected MySQLInputConnection newConnection(PluginTask task) throws SQLException
     {
         MySQLPluginTask t = (MySQLPluginTask) task;
+        return newConnection(t, t.getHost(), t.getPort(), t.getDatabase());
+    }
+
+    @Override
+    protected boolean supportsTargets()
+    {
+        return true;
+    }
+
+    @Override
+    protected boolean supportsReplicationLag()
+    {
+        return true;
+    }
+
+    @Override
+    protected MySQLInputConnection newConnection(PluginTask task, JdbcTarget target) throws SQLException
+    {
+        MySQLPluginTask t = (MySQLPluginTask) task;
+        if (target.getSchema().isPresent()) {
+            throw new ConfigException("schema can't be set at targets option of MySQL. Use database instead");
+        }
+        return newConnection(t, target.getHost().orElse(t.getHost()), target.getPort().orElse(t.getPort()),
+                target.getDatabase().orElse(t.getDatabase()));
+    }
 
+    private MySQLInputConnection newConnection(MySQLPluginTask t, String host, int port, String database) throws SQLException
+    {
         this.loadMySqlJdbcDriver("com.mysql.jdbc.Driver", t.getDriverPath());
 
         String url = String.format("jdbc:mysql://%s:%d/%s",
-                t.getHost(), t.getPort(), t.getDatabase());
+                host, port, database);
 
         Properties props = new Properties();
         props.setProperty("user", t.getUser());
@@ -127,18 +167,161 @@ public class MySQLInputPlugin
         // load timezone mappings
         loadTimeZoneMappingsIfNeeded();
 
-        Connection con = DriverManager.getConnection(url, props);
+        Connection con = connect(t, url, props, () -> DriverManager.getConnection(url, props));
         try {
             MySQLInputConnection c = new MySQLInputConnection(con);
             con = null;
             return c;
         } finally {
             if (con != null) {
+                JdbcConnectionLimiter.close(con);
+            }
+        }
+    }
+
+    @Override
+    protected JdbcSnapshot beginSnapshot(PluginTask task, int taskCount) throws SQLException
+    {
+        MySQLPluginTask t = (MySQLPluginTask) task;
+        t.setSnapshotId(Optional.<String>empty());
+
+        switch (t.getConsistentSnapshot()) {
+        case "none":
+            return super.beginSnapshot(task, taskCount);
+        case "lock":
+        case "gtid":
+            break;
+        default:
+            throw new ConfigException(String.format("Unknown consistent_snapshot '%s'. It must be 'none', 'lock' or 'gtid'",
+                        t.getConsistentSnapshot()));
+        }
+        if (!task.getTargets().isEmpty() || !task.getReplicas().isEmpty()) {
+            throw new ConfigException("consistent_snapshot can't be used with targets or replicas option");
+        }
+        if (task.getFetchConnections() > 1) {
+            // a connection of the snapshot is prepared for each task
+            throw new ConfigException("consistent_snapshot can't be used if fetch_connections is greater than 1");
+        }
+        if (task.getPartitionSplitTimeout().isPresent()) {
+            // the connection of the snapshot can't be replaced when the query of a range is cancelled
+            throw new ConfigException("consistent_snapshot can't be used with partition_split_timeout option");
+        }
+        if (task.getRetryLimit() > 0) {
+            // the connection of the snapshot can't be replaced when a query is retried
+            throw new ConfigException("consistent_snapshot can't be used with retry_limit option");
+        }
+
+        // all connections of the tasks are opened at the beginning with the coordinator. The
+        // connections beyond connection_limit would wait for the others forever.
+        int connectionCount = taskCount + 1;
+        if (task.getConnectionLimit().isPresent() && task.getConnectionLimit().get() < connectionCount) {
+            throw new ConfigException(String.format(
+                        "consistent_snapshot opens %d connections at the same time for %d tasks, but connection_limit is %d",
+                        connectionCount, taskCount, task.getConnectionLimit().get()));
+        }
+
+        List<MySQLInputConnection> connections;
+        if (t.getConsistentSnapshot().equals("lock")) {
+            connections = startSnapshotsWithLock(t, taskCount);
+        }
+        else {
+            connections = startSnapshotsWithGtid(t, taskCount);
+        }
+
+        MySQLConsistentSnapshot snapshot = MySQLConsistentSnapshot.register(connections);
+        t.setSnapshotId(Optional.of(snapshot.getId()));
+        return snapshot;
+    }
+
+    // FLUSH TABLES WITH READ LOCK blocks writes until all connections start their transactions.
+    private List<MySQLInputConnection> startSnapshotsWithLock(MySQLPluginTask task, int taskCount) throws SQLException
+    {
+        final ArrayList<MySQLInputConnection> connections = new ArrayList<>();
+        try (MySQLInputConnection coordinator = newConnection(task)) {
+            checkMaxConnections(coordinator, taskCount);
+            coordinator.flushTablesWithReadLock();
+            try {
+                for (int i = 0; i < taskCount; i++) {
+                    connections.add(newConnection(task));
+                    connections.get(i).startConsistentSnapshot();
+                }
+            } catch (SQLException | RuntimeException ex) {
+                closeConnections(connections);
+                throw ex;
+            } finally {
+                coordinator.unlockTables();
+            }
+        }
+        logger.info("Started {} transactions with consistent snapshot", taskCount);
+        return connections;
+    }
+
+    // Without locks, the transactions see the same state if no transactions are committed (gtid_executed
+    // doesn't change) while they start. Retries otherwise.
+    private List<MySQLInputConnection> startSnapshotsWithGtid(MySQLPluginTask task, int taskCount) throws SQLException
+    {
+        final int maxAttempts = 10;
+        try (MySQLInputConnection coordinator = newConnection(task)) {
+            checkMaxConnections(coordinator, taskCount);
+            for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+                final ArrayList<MySQLInputConnection> connections = new ArrayList<>();
+                try {
+                    for (int i = 0; i < taskCount; i++) {
+                        connections.add(newConnection(task));
+                    }
+                    String before = coordinator.getGtidExecuted();
+                    for (MySQLInputConnection con : connections) {
+                        con.startConsistentSnapshot();
+                    }
+                    String after = coordinator.getGtidExecuted();
+                    if (before.equals(after)) {
+                        logger.info("Started {} transactions with consistent snapshot at gtid_executed '{}'", taskCount, after);
+                        return connections;
+                    }
+                } catch (SQLException | RuntimeException ex) {
+                    closeConnections(connections);
+                    throw ex;
+                }
+                logger.info("gtid_executed changed while starting transactions. Retrying ({}/{})", attempt, maxAttempts);
+                closeConnections(connections);
+            }
+        }
+        throw new RuntimeException(String.format(
+                    "Failed to start transactions with consistent snapshot because other transactions were committed %d times. Use consistent_snapshot: lock instead.",
+                    maxAttempts));
+    }
+
+    private static void checkMaxConnections(MySQLInputConnection coordinator, int taskCount) throws SQLException
+    {
+        int maxConnections = coordinator.getMaxConnections();
+        if (maxConnections < taskCount + 1) {
+            throw new ConfigException(String.format(
+                        "consistent_snapshot opens %d connections at the same time for %d tasks, but max_connections of the server is %d. Decrease partition_count",
+                        taskCount + 1, taskCount, maxConnections));
+        }
+    }
+
+    private static void closeConnections(List<MySQLInputConnection> connections)
+    {
+        for (MySQLInputConnection con : connections) {
+            try {
                 con.close();
+            } catch (SQLException ex) {
+                logger.warn("Failed to close a connection", ex);
             }
         }
     }
 
+    @Override
+    protected JdbcInputConnection newTaskConnection(PluginTask task, int taskIndex) throws SQLException
+    {
+        MySQLPluginTask t = (MySQLPluginTask) task;
+        if (t.getSnapshotId().isPresent()) {
+            return MySQLConsistentSnapshot.takeConnection(t.getSnapshotId().get(), taskIndex);
+        }
+        return super.newTaskConnection(task, taskIndex);
+    }
+
     @Override
     protected ColumnGetterFactory newColumnGetterFactory(final PageBuilder pageBuilder, final ZoneId dateTimeZone)
     {
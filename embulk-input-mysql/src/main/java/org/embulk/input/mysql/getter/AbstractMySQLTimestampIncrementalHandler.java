@@ -4,7 +4,6 @@ import com.fasterxml.jackson.databind.JsonNode;
 import org.embulk.config.ConfigSource;
 import org.embulk.input.jdbc.getter.AbstractIncrementalHandler;
 import org.embulk.input.jdbc.getter.ColumnGetter;
-import org.embulk.spi.Column;
 import org.embulk.spi.Exec;
 import org.embulk.util.config.Task;
 import org.embulk.util.timestamp.TimestampFormatter;
@@ -31,7 +30,7 @@ public abstract class AbstractMySQLTimestampIncrementalHandler
     }
 
     @Override
-    public void getAndSet(ResultSet from, int fromIndex, Column toColumn)
+    protected void sniff(ResultSet from, int fromIndex)
             throws SQLException
     {
         Timestamp timestamp = from.getTimestamp(fromIndex);
@@ -39,8 +38,6 @@ public abstract class AbstractMySQLTimestampIncrementalHandler
             epochSecond = timestamp.getTime() / 1000;
             nano = timestamp.getNanos();
         }
-
-        super.getAndSet(from, fromIndex, toColumn);
     }
 
     @Override
@@ -13,6 +13,7 @@ import org.embulk.spi.PageBuilder;
 import org.embulk.spi.type.Types;
 
 import java.time.ZoneId;
+import java.util.Optional;
 import java.util.TimeZone;
 
 public class MySQLColumnGetterFactory
@@ -32,16 +33,24 @@ public class MySQLColumnGetterFactory
         case "DATETIME":
         case "TIMESTAMP":
             int index = task.getQuerySchema().findColumn(column.getName()).get();
-            if (!task.getIncremental() || !task.getIncrementalColumnIndexes().contains(index)) {
+            boolean incrementalColumn = task.getIncremental() && task.getIncrementalColumnIndexes().contains(index);
+            boolean keysetColumn = task.getKeysetPagination() && task.getKeysetColumnIndexes().contains(index);
+            if (!incrementalColumn && !keysetColumn && !isTimePartitionColumn(task, index)) {
                 return getter;
             }
 
-            // incremental loading
+            // incremental loading, keyset pagination or time partitioning
             MySQLInputConnection mysqlInputConnection = (MySQLInputConnection) con;
             // Users cannot use DATETIME or TIMESTAMP typed columns as incremental_columns: if 'useLegacyDatetimeCode=true'.
             // That might be acceptable since mysql-connector-java v6.x will turn off, by default.
             if (mysqlInputConnection.getUseLegacyDatetimeCode()) {
-                throw new ConfigException("Must use 'useLegacyDatetimeCode=false' if 'DATETIME' or 'TIMESTAMP' typed columns are used as incremental_columns:");
+                if (incrementalColumn) {
+                    throw new ConfigException("Must use 'useLegacyDatetimeCode=false' if 'DATETIME' or 'TIMESTAMP' typed columns are used as incremental_columns:");
+                }
+                if (keysetColumn) {
+                    throw new ConfigException("Must use 'useLegacyDatetimeCode=false' if 'DATETIME' or 'TIMESTAMP' typed columns are used as keyset_columns");
+                }
+                throw new ConfigException("Must use 'useLegacyDatetimeCode=false' if 'DATETIME' or 'TIMESTAMP' typed columns are used as partition_by with partition_type 'time'");
             }
 
             TimeZone timeZone = mysqlInputConnection.getServerTimezoneTZ();
@@ -59,6 +68,14 @@ public class MySQLColumnGetterFactory
         }
     }
 
+    private static boolean isTimePartitionColumn(PluginTask task, int index)
+    {
+        if (!task.getPartitionBy().isPresent() || !task.getPartitionType().orElse("range").equals("time")) {
+            return false;
+        }
+        return task.getQuerySchema().findColumn(task.getPartitionBy().get()).equals(Optional.of(index));
+    }
+
     @Override
     protected String sqlTypeToValueType(JdbcColumn column, int sqlType)
     {
@@ -116,6 +116,18 @@ public class IncrementalTest
         assertThat(result2.getConfigDiff(), is((ConfigDiff) loadYamlResource(embulk, "dt/expected_2.diff")));
     }
 
+    @Test
+    public void testDateTimeWithConnectionLimit() throws Exception
+    {
+        // DATETIME incremental columns use the classes of the driver through the connection
+        execute(readResource("dt/setup.sql"));
+
+        Path out1 = embulk.createTempFile("csv");
+        RunResult result1 = embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "dt/connection_limit_config_1.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("dt/expected_1.csv")));
+        assertThat(result1.getConfigDiff(), is((ConfigDiff) loadYamlResource(embulk, "dt/expected_1.diff")));
+    }
+
     @Test
     public void testTimestamp() throws Exception
     {
@@ -0,0 +1,37 @@
+package org.embulk.input.mysql;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MySQLConsistentSnapshotTest
+{
+    @Test
+    public void testSnapshotOfOtherProcess() throws Exception
+    {
+        // tasks run by other processes don't find the snapshot registered by the transaction
+        try {
+            MySQLConsistentSnapshot.takeConnection("unknown", 0);
+            fail();
+        } catch (IllegalStateException ex) {
+            assertThat(ex.getMessage(), containsString("consistent_snapshot requires the local executor"));
+        }
+    }
+
+    @Test
+    public void testClosedSnapshot() throws Exception
+    {
+        MySQLConsistentSnapshot snapshot = MySQLConsistentSnapshot.register(Collections.<MySQLInputConnection>emptyList());
+        snapshot.close();
+        try {
+            MySQLConsistentSnapshot.takeConnection(snapshot.getId(), 0);
+            fail();
+        } catch (IllegalStateException ex) {
+            assertThat(ex.getMessage(), containsString("task 0 is not available"));
+        }
+    }
+}
@@ -4,12 +4,18 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.ByteStreams;
 
+import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
 import org.embulk.test.EmbulkTests;
+import org.embulk.test.TestingEmbulk;
 
 import java.io.IOException;
+import java.nio.file.Path;
 
 import static java.util.Locale.ENGLISH;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class MySQLTests
 {
@@ -18,6 +24,24 @@ public class MySQLTests
         return EmbulkTests.config("EMBULK_INPUT_MYSQL_TEST_CONFIG");
     }
 
+    // Runs the input and asserts that it fails by ConfigException with the message
+    public static void assertConfigException(TestingEmbulk embulk, ConfigSource config, String message) throws Exception
+    {
+        Path out = embulk.createTempFile("csv");
+        try {
+            embulk.runInput(config, out);
+        } catch (Exception ex) {
+            for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+                if (cause instanceof ConfigException) {
+                    assertThat(cause.getMessage(), is(message));
+                    return;
+                }
+            }
+            throw ex;
+        }
+        fail("ConfigException was not thrown");
+    }
+
     public static void execute(String sql)
     {
         ConfigSource config = baseConfig();
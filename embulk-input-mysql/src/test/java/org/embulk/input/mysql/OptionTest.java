@@ -18,6 +18,7 @@ import org.junit.Test;
 
 import java.nio.file.Path;
 
+import static org.embulk.input.mysql.MySQLTests.assertConfigException;
 import static org.embulk.input.mysql.MySQLTests.execute;
 import static org.embulk.test.EmbulkTests.readFile;
 import static org.embulk.test.EmbulkTests.readSortedFile;
@@ -125,4 +126,32 @@ public class OptionTest
         assertThat(readFile(out1), is(readResource("order_by_desc_expected.csv")));
     }
 
+    @Test
+    public void testConsistentSnapshotWithPartitionSplitTimeout() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "consistent_snapshot_split_timeout.yml")),
+                "consistent_snapshot can't be used with partition_split_timeout option");
+    }
+
+    @Test
+    public void testConsistentSnapshotWithRetryLimit() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "consistent_snapshot_retry.yml")),
+                "consistent_snapshot can't be used with retry_limit option");
+    }
+
+    @Test
+    public void testConsistentSnapshotWithConnectionLimit() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "consistent_snapshot_connection_limit.yml")),
+                "consistent_snapshot opens 4 connections at the same time for 3 tasks, but connection_limit is 2");
+    }
+
+    @Test
+    public void testPartitionByUnsignedBigint() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "partition_unsigned.yml")),
+                "Values of column 'id' set at partition_by option must be between -9223372036854775808 and 9223372036854775807, but got 18446744073709551615");
+    }
+
 }
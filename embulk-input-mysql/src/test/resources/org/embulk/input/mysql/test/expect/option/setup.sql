@@ -27,3 +27,14 @@ insert into test3 values
 (1, NULL, NULL),
 (2, '2019-01-02 12:34:56', '2019-01-02 12:34:56'),
 (3, '2018-12-31 23:59:59', '2018-12-31 23:59:59');
+
+drop table if exists test_unsigned;
+
+create table test_unsigned (
+    id   bigint unsigned not null,
+    primary key(id)
+);
+
+insert into test_unsigned values
+(1),
+(18446744073709551615);
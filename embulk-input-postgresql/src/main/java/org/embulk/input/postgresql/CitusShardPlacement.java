@@ -0,0 +1,101 @@
+package org.embulk.input.postgresql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// A shard of a Citus distributed table and the worker node that has a copy of it.
+public class CitusShardPlacement
+{
+    private final long shardId;
+    private final String shardName;
+    private final String nodeName;
+    private final int nodePort;
+
+    @JsonCreator
+    public CitusShardPlacement(
+            @JsonProperty("shard_id") long shardId,
+            @JsonProperty("shard_name") String shardName,
+            @JsonProperty("node_name") String nodeName,
+            @JsonProperty("node_port") int nodePort)
+    {
+        this.shardId = shardId;
+        this.shardName = shardName;
+        this.nodeName = nodeName;
+        this.nodePort = nodePort;
+    }
+
+    @JsonProperty("shard_id")
+    public long getShardId()
+    {
+        return shardId;
+    }
+
+    // Quoted name of the shard table on the worker node
+    @JsonProperty("shard_name")
+    public String getShardName()
+    {
+        return shardName;
+    }
+
+    @JsonProperty("node_name")
+    public String getNodeName()
+    {
+        return nodeName;
+    }
+
+    @JsonProperty("node_port")
+    public int getNodePort()
+    {
+        return nodePort;
+    }
+
+    private String getNode()
+    {
+        return nodeName + ":" + nodePort;
+    }
+
+    // Chooses a placement for each shard. If a shard is replicated to multiple nodes, the node
+    // that has the fewest shards chosen so far is used to spread the tasks over the workers.
+    public static List<CitusShardPlacement> selectPlacements(List<CitusShardPlacement> placements)
+    {
+        final LinkedHashMap<Long, List<CitusShardPlacement>> shards = new LinkedHashMap<>();
+        for (CitusShardPlacement placement : placements) {
+            List<CitusShardPlacement> replicas = shards.get(placement.getShardId());
+            if (replicas == null) {
+                replicas = new ArrayList<>();
+                shards.put(placement.getShardId(), replicas);
+            }
+            replicas.add(placement);
+        }
+
+        final Map<String, Integer> shardsPerNode = new HashMap<>();
+        final ArrayList<CitusShardPlacement> selected = new ArrayList<>();
+        for (List<CitusShardPlacement> replicas : shards.values()) {
+            CitusShardPlacement best = null;
+            int bestCount = Integer.MAX_VALUE;
+            for (CitusShardPlacement replica : replicas) {
+                int count = shardsPerNode.getOrDefault(replica.getNode(), 0);
+                if (count < bestCount) {
+                    best = replica;
+                    bestCount = count;
+                }
+            }
+            shardsPerNode.put(best.getNode(), bestCount + 1);
+            selected.add(best);
+        }
+        return Collections.unmodifiableList(selected);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s on %s:%d", shardName, nodeName, nodePort);
+    }
+}
@@ -1,31 +1,74 @@
 package org.embulk.input.postgresql;
 
+import java.io.IOException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.embulk.config.ConfigException;
+import org.embulk.input.jdbc.JdbcColumn;
 import org.embulk.input.jdbc.JdbcInputConnection;
 import org.embulk.input.jdbc.JdbcLiteral;
+import org.embulk.input.jdbc.JdbcSchema;
 import org.embulk.input.jdbc.getter.ColumnGetter;
+import org.embulk.input.postgresql.copy.CopyRecordSink;
+import org.embulk.input.postgresql.copy.CopyTupleReader;
+import org.embulk.input.postgresql.copy.CopyValueDecoder;
+import org.embulk.input.postgresql.copy.PageBuilderRecordSink;
+import org.embulk.spi.PageBuilder;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyInputStream;
 
 public class PostgreSQLInputConnection
         extends JdbcInputConnection
 {
     private static final Logger logger = LoggerFactory.getLogger(PostgreSQLInputConnection.class);
 
+    private final Optional<String> copyFormat;
+    private final boolean prefetch;
+
     public PostgreSQLInputConnection(Connection connection, String schemaName, Optional<Integer> statementTimeoutMillis)
             throws SQLException
+    {
+        this(connection, schemaName, statementTimeoutMillis, Optional.<String>empty(), false);
+    }
+
+    // Rows are read by COPY in the format ("binary" or "text") if copyFormat is set. Otherwise,
+    // they are read by a cursor, and the next rows are fetched in background if prefetch is true.
+    public PostgreSQLInputConnection(Connection connection, String schemaName, Optional<Integer> statementTimeoutMillis,
+            Optional<String> copyFormat, boolean prefetch)
+            throws SQLException
     {
         super(connection, schemaName);
+        this.copyFormat = copyFormat;
+        this.prefetch = prefetch;
         setStatementTimeoutIfSpecified(statementTimeoutMillis);
     }
 
+    @Override
+    public SelectCursor newSelectCursor(PreparedQuery preparedQuery,
+            List<ColumnGetter> getters,
+            int fetchRows, int queryTimeout) throws SQLException
+    {
+        if (copyFormat.isPresent()) {
+            return newCopySelect(preparedQuery, fetchRows);
+        }
+        return super.newSelectCursor(preparedQuery, getters, fetchRows, queryTimeout);
+    }
+
     @Override
     protected BatchSelect newBatchSelect(PreparedQuery preparedQuery,
             List<ColumnGetter> getters,
@@ -48,6 +91,9 @@ public class PostgreSQLInputConnection
 
         String fetchSql = "FETCH FORWARD "+fetchRows+" FROM cur";
         // Because socketTimeout is set in Connection, don't need to set quertyTimeout.
+        if (prefetch) {
+            return new PrefetchCursorSelect(fetchSql, connection.prepareStatement(fetchSql), connection.prepareStatement(fetchSql));
+        }
         return new CursorSelect(fetchSql, connection.prepareStatement(fetchSql));
     }
 
@@ -75,12 +121,440 @@ public class PostgreSQLInputConnection
             return rs;
         }
 
+        @Override
+        public void cancel() throws SQLException
+        {
+            fetchStatement.cancel();
+        }
+
         public void close() throws SQLException
         {
             // TODO close?
         }
     }
 
+    // Fetches the next rows in background while the caller converts the current rows. The rows of
+    // a FETCH are read into memory before executeQuery returns. So, the connection isn't used by
+    // the current ResultSet. Two statements are used in turn because executing a statement closes
+    // its last ResultSet. Two batches are kept in memory at most.
+    public class PrefetchCursorSelect
+            implements BatchSelect
+    {
+        private final String fetchSql;
+        private final PreparedStatement[] fetchStatements;
+        private final ExecutorService executor;
+        private int nextStatement = 0;
+        private Future<ResultSet> nextResult = null;
+
+        public PrefetchCursorSelect(String fetchSql, PreparedStatement fetchStatement1, PreparedStatement fetchStatement2)
+        {
+            this.fetchSql = fetchSql;
+            this.fetchStatements = new PreparedStatement[] { fetchStatement1, fetchStatement2 };
+            this.executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "embulk-input-postgresql-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        @Override
+        public ResultSet fetch() throws SQLException
+        {
+            if (nextResult == null) {
+                nextResult = submitFetch();
+            }
+
+            long startTime = System.currentTimeMillis();
+            ResultSet rs = waitFor(nextResult);
+            double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+            logger.info(String.format("> waited %.2f seconds for the fetched rows", seconds));
+
+            // the statement of rs isn't executed until the caller fetches the next rows. No rows
+            // remain if rs is empty (isBeforeFirst is false).
+            nextResult = rs.isBeforeFirst() ? submitFetch() : null;
+            return rs;
+        }
+
+        private Future<ResultSet> submitFetch()
+        {
+            final PreparedStatement stmt = fetchStatements[nextStatement];
+            nextStatement = (nextStatement + 1) % fetchStatements.length;
+            return executor.submit(() -> {
+                logger.info("SQL: " + fetchSql);
+                long startTime = System.currentTimeMillis();
+
+                ResultSet rs = stmt.executeQuery();
+
+                double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+                logger.info(String.format("> %.2f seconds", seconds));
+                return rs;
+            });
+        }
+
+        private ResultSet waitFor(Future<ResultSet> result) throws SQLException
+        {
+            try {
+                return result.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while fetching rows", ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof SQLException) {
+                    throw (SQLException) ex.getCause();
+                }
+                throw new SQLException(ex.getCause());
+            }
+        }
+
+        @Override
+        public void cancel() throws SQLException
+        {
+            for (PreparedStatement stmt : fetchStatements) {
+                stmt.cancel();
+            }
+        }
+
+        @Override
+        public void close() throws SQLException
+        {
+            try {
+                // the connection can't be used until the running fetch finishes
+                if (nextResult != null) {
+                    try {
+                        waitFor(nextResult);
+                    } catch (SQLException ex) {
+                        logger.warn("Failed to fetch rows that are not used", ex);
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+                for (PreparedStatement stmt : fetchStatements) {
+                    stmt.close();
+                }
+            }
+        }
+    }
+
+    // COPY streams the rows of the query in a single response. A fetch decodes fetchRows rows
+    // at most from the stream into the page. COPY doesn't take parameters, so the plugin rejects
+    // the options that add them (incremental and partitions by ranges).
+    private CopySelect newCopySelect(PreparedQuery preparedQuery, int fetchRows) throws SQLException
+    {
+        if (!preparedQuery.getParameters().isEmpty()) {
+            throw new IllegalArgumentException("COPY can't run a query with parameters");
+        }
+        boolean binary = copyFormat.get().equals("binary");
+        String query = preparedQuery.getQuery();
+        JdbcSchema schema = getSchemaOfQuery(query);
+        List<CopyValueDecoder> decoders = newCopyDecoders(schema);
+
+        boolean castToText = false;
+        for (CopyValueDecoder decoder : decoders) {
+            castToText |= binary && !decoder.isBinarySupported();
+        }
+        if (castToText) {
+            // columns are renamed by position because the names of the query may be duplicated
+            final ArrayList<String> expressions = new ArrayList<>();
+            final ArrayList<String> aliases = new ArrayList<>();
+            for (int i = 0; i < decoders.size(); i++) {
+                aliases.add("c" + i);
+                expressions.add(decoders.get(i).isBinarySupported() ? "c" + i : "c" + i + "::text");
+            }
+            query = "SELECT " + String.join(", ", expressions)
+                + " FROM (" + query + ") AS embulk_copy(" + String.join(", ", aliases) + ")";
+        }
+
+        String sql = "COPY (" + query + ") TO STDOUT (FORMAT " + copyFormat.get() + ")";
+        logger.info("SQL: " + sql);
+        PGCopyInputStream in = new PGCopyInputStream(connection.unwrap(PGConnection.class), sql);
+        return new CopySelect(in, new CopyTupleReader(in, binary, decoders), fetchRows);
+    }
+
+    // Throws ConfigException if a column of the query can't be read by COPY
+    public List<CopyValueDecoder> newCopyDecoders(JdbcSchema schema)
+    {
+        final ArrayList<CopyValueDecoder> decoders = new ArrayList<>();
+        for (JdbcColumn column : schema.getColumns()) {
+            Optional<CopyValueDecoder> decoder = CopyValueDecoder.of(column.getTypeName());
+            if (!decoder.isPresent()) {
+                throw new ConfigException(String.format(Locale.ENGLISH,
+                            "Column '%s' of type '%s' is not supported if fetch_mode is 'copy'. Cast it to text in the query",
+                            column.getName(), column.getTypeName()));
+            }
+            decoders.add(decoder.get());
+        }
+        return Collections.unmodifiableList(decoders);
+    }
+
+    public class CopySelect
+            implements PageBatchSelect
+    {
+        private final PGCopyInputStream in;
+        private final CopyTupleReader reader;
+        private final int fetchRows;
+
+        public CopySelect(PGCopyInputStream in, CopyTupleReader reader, int fetchRows)
+        {
+            this.in = in;
+            this.reader = reader;
+            this.fetchRows = fetchRows;
+        }
+
+        @Override
+        public long fetch(PageBuilder pageBuilder) throws SQLException
+        {
+            CopyRecordSink sink = new PageBuilderRecordSink(pageBuilder);
+            long rows = 0;
+            try {
+                while (rows < fetchRows && reader.readTuple(sink)) {
+                    pageBuilder.addRecord();
+                    rows++;
+                }
+            } catch (IOException ex) {
+                throw toSQLException(ex);
+            }
+            return rows;
+        }
+
+        @Override
+        public void cancel() throws SQLException
+        {
+            if (in.isActive()) {
+                in.cancelCopy();
+            }
+        }
+
+        @Override
+        public void close() throws SQLException
+        {
+            try {
+                // cancels the rest of the rows if the copy isn't finished
+                in.close();
+            } catch (IOException ex) {
+                throw toSQLException(ex);
+            }
+        }
+
+        private SQLException toSQLException(IOException ex)
+        {
+            // the stream wraps SQLException of the driver
+            if (ex.getCause() instanceof SQLException) {
+                return (SQLException) ex.getCause();
+            }
+            return new SQLException(ex);
+        }
+    }
+
+    // Returns the number of blocks of the table. relpages is updated only by VACUUM and ANALYZE.
+    // So, the larger one of relpages and the current size is used.
+    public long getRelationPages(String tableName) throws SQLException
+    {
+        String sql = "SELECT GREATEST(c.relpages, pg_relation_size(c.oid) / current_setting('block_size')::int8)"
+            + " FROM pg_class c WHERE c.oid = CAST(CAST(? AS text) AS regclass)";
+        logger.info("SQL: " + sql);
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, buildTableName(tableName));
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return 0;
+                }
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    // Returns healthy placements of the shards of a Citus distributed table on primary worker nodes.
+    // Returns an empty list if the table isn't a distributed table.
+    public List<CitusShardPlacement> getCitusShardPlacements(String tableName) throws SQLException
+    {
+        String sql = "SELECT s.shardid, shard_name(s.logicalrelid, s.shardid), n.nodename, n.nodeport"
+            + " FROM pg_dist_shard s"
+            + " JOIN pg_dist_placement p ON p.shardid = s.shardid"
+            + " JOIN pg_dist_node n ON n.groupid = p.groupid"
+            + " WHERE s.logicalrelid = CAST(CAST(? AS text) AS regclass)"
+            + " AND p.shardstate = 1 AND n.isactive AND n.noderole = 'primary'"
+            + " ORDER BY s.shardid, n.nodename, n.nodeport";
+        logger.info("SQL: " + sql);
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, buildTableName(tableName));
+            try (ResultSet rs = stmt.executeQuery()) {
+                final ArrayList<CitusShardPlacement> placements = new ArrayList<>();
+                while (rs.next()) {
+                    placements.add(new CitusShardPlacement(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getInt(4)));
+                }
+                return Collections.unmodifiableList(placements);
+            }
+        }
+    }
+
+    @Override
+    public Optional<Long> getReplicationLagSeconds() throws SQLException
+    {
+        // The last replayed transaction is old if the primary is idle. The standby doesn't lag if
+        // it replayed all received WAL.
+        String sql = "SELECT CASE"
+            + " WHEN NOT pg_is_in_recovery() THEN 0"
+            + " WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+            + " ELSE CAST(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) AS int8) END";
+        logger.info("SQL: " + sql);
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            long lag = rs.getLong(1);
+            return rs.wasNull() ? Optional.<Long>empty() : Optional.of(lag);
+        }
+    }
+
+    // Starts a REPEATABLE READ transaction and exports its snapshot. Other transactions can import
+    // the snapshot while this transaction is open.
+    public String exportSnapshot() throws SQLException
+    {
+        executeUpdate("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+        String sql = "SELECT pg_export_snapshot()";
+        logger.info("SQL: " + sql);
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    // This must run before the first query of the transaction.
+    public void importSnapshot(String snapshotId) throws SQLException
+    {
+        executeUpdate("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+        executeUpdate("SET TRANSACTION SNAPSHOT '" + snapshotId.replace("'", "''") + "'");
+    }
+
+    @Override
+    protected String buildKeysetQuery(String rawQuery, Optional<String> keyCondition, String orderBy, int limit)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("SELECT * FROM (").append(rawQuery).append(") embulk_keyset_");
+        if (keyCondition.isPresent()) {
+            sb.append(" WHERE ").append(keyCondition.get());
+        }
+        sb.append(" ORDER BY ").append(orderBy);
+        sb.append(" LIMIT ").append(limit);
+        return sb.toString();
+    }
+
+    @Override
+    public String buildHashPartitionCondition(String columnName,
+            int partitionCount, int partitionIndex) throws SQLException
+    {
+        // hashtext returns int4. It's converted to int8 because ABS(-2147483648) overflows.
+        return String.format(Locale.ENGLISH, "MOD(ABS(hashtext(%s::text)::int8), %d) = %d",
+                quoteIdentifierString(columnName), partitionCount, partitionIndex);
+    }
+
+    @Override
+    public List<String> getTablePartitions(String tableName) throws SQLException
+    {
+        // All tables that inherit the table including sub-partitions. Partitioned tables (relkind 'p')
+        // don't have rows by themselves. Parents of table inheritance (relkind 'r') may have rows.
+        String sql = "WITH RECURSIVE tables(oid) AS ("
+            + " SELECT CAST(CAST(? AS text) AS regclass)::oid"
+            + " UNION ALL"
+            + " SELECT i.inhrelid FROM pg_inherits i JOIN tables t ON i.inhparent = t.oid"
+            + ")"
+            + " SELECT quote_ident(n.nspname) || '.' || quote_ident(c.relname)"
+            + " FROM tables t"
+            + " JOIN pg_class c ON c.oid = t.oid"
+            + " JOIN pg_namespace n ON n.oid = c.relnamespace"
+            + " WHERE c.relkind IN ('r', 'f')"
+            + " ORDER BY 1";
+        logger.info("SQL: " + sql);
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, buildTableName(tableName));
+            try (ResultSet rs = stmt.executeQuery()) {
+                final ArrayList<String> partitions = new ArrayList<>();
+                while (rs.next()) {
+                    partitions.add(rs.getString(1));
+                }
+                return Collections.unmodifiableList(partitions);
+            }
+        }
+    }
+
+    @Override
+    protected String buildTablePartitionName(String tableName, String partitionName)
+    {
+        // partitionName is already quoted by getTablePartitions. ONLY excludes rows of the child tables.
+        return "ONLY " + partitionName;
+    }
+
+    @Override
+    public Optional<String> buildQuantileSampleQuery(String tableName, Optional<String> whereCondition,
+            String columnName, int partitionCount, double samplePercent) throws SQLException
+    {
+        // SYSTEM reads random blocks of the table instead of all blocks
+        String from = String.format(Locale.ENGLISH, "%s TABLESAMPLE SYSTEM (%.6f)", buildTableName(tableName), samplePercent);
+        return Optional.of(buildQuantileQueryFrom(from, whereCondition, columnName, partitionCount));
+    }
+
+    @Override
+    public List<Long> estimatePartitionBounds(String tableName, String columnName,
+            int partitionCount) throws SQLException
+    {
+        // histogram_bounds divides the values into buckets of the same number of rows. It
+        // doesn't include the most common values. inherited=true covers the child tables too.
+        String sql = "SELECT s.histogram_bounds::text FROM pg_stats s"
+            + " JOIN pg_namespace n ON n.nspname = s.schemaname"
+            + " JOIN pg_class c ON c.relnamespace = n.oid AND c.relname = s.tablename"
+            + " WHERE c.oid = CAST(CAST(? AS text) AS regclass) AND s.attname = ?"
+            + " ORDER BY s.inherited DESC LIMIT 1";
+        logger.info("SQL: " + sql);
+        String histogram;
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, buildTableName(tableName));
+            stmt.setString(2, columnName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return Collections.emptyList();
+                }
+                histogram = rs.getString(1);
+            }
+        }
+        if (histogram == null || histogram.length() <= 2) {
+            return Collections.emptyList();
+        }
+
+        // "{1,100,200,...}"
+        String[] elements = histogram.substring(1, histogram.length() - 1).split(",");
+        final ArrayList<Long> values = new ArrayList<>();
+        final ArrayList<Double> fractions = new ArrayList<>();
+        for (int i = 0; i < elements.length; i++) {
+            values.add(Long.parseLong(elements[i].trim()));
+            fractions.add(elements.length == 1 ? 0.0 : (double) i / (elements.length - 1));
+        }
+        return pickPartitionBounds(values, fractions, partitionCount);
+    }
+
+    @Override
+    public Optional<Long> estimateRowCount(String tableName) throws SQLException
+    {
+        // reltuples is updated by VACUUM and ANALYZE. It's negative (or zero before PostgreSQL 14)
+        // if the table has never been analyzed. Partitioned tables count the rows of their children.
+        String sql = "WITH RECURSIVE tables(oid) AS ("
+            + " SELECT CAST(CAST(? AS text) AS regclass)::oid"
+            + " UNION ALL"
+            + " SELECT i.inhrelid FROM pg_inherits i JOIN tables t ON i.inhparent = t.oid"
+            + ")"
+            + " SELECT SUM(GREATEST(c.reltuples, 0))::int8, MAX(c.reltuples)"
+            + " FROM tables t JOIN pg_class c ON c.oid = t.oid";
+        logger.info("SQL: " + sql);
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, buildTableName(tableName));
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next() || rs.getDouble(2) <= 0) {
+                    return Optional.empty();
+                }
+                return Optional.of(rs.getLong(1));
+            }
+        }
+    }
+
     private void setStatementTimeoutIfSpecified(Optional<Integer> statementTimeoutMillis)
         throws SQLException
     {
@@ -89,6 +563,9 @@ public class PostgreSQLInputConnection
             try {
                 String sql = "SET statement_timeout TO " + quoteIdentifierString(String.valueOf(statementTimeoutMillis.get()));
                 executeUpdate(sql);
+                // SET is a session setting. Commits the implicit transaction so that
+                // SET TRANSACTION of consistent_snapshot runs at the beginning of the next one.
+                connection.commit();
             }
             finally {
                 stmt.close();
@@ -6,16 +6,28 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.embulk.config.ConfigException;
 import org.embulk.input.jdbc.AbstractJdbcInputPlugin;
+import org.embulk.input.jdbc.JdbcConnectionLimiter;
+import org.embulk.input.jdbc.JdbcInputConnection;
+import org.embulk.input.jdbc.JdbcLiteral;
+import org.embulk.input.jdbc.JdbcPartition;
+import org.embulk.input.jdbc.JdbcSchema;
+import org.embulk.input.jdbc.JdbcSnapshot;
+import org.embulk.input.jdbc.JdbcTarget;
 import org.embulk.input.jdbc.getter.ColumnGetterFactory;
 import org.embulk.input.postgresql.PostgreSQLInputConnection;
 import org.embulk.input.postgresql.getter.PostgreSQLColumnGetterFactory;
 import org.embulk.spi.PageBuilder;
+import org.embulk.spi.Schema;
 import org.embulk.util.config.Config;
 import org.embulk.util.config.ConfigDefault;
 import org.slf4j.Logger;
@@ -63,6 +75,28 @@ public class PostgreSQLInputPlugin
         @Config("statement_timeout_millis")
         @ConfigDefault("null")
         public Optional<Integer> getStatementTimeoutMillis();
+
+        @Config("fetch_mode")
+        @ConfigDefault("\"cursor\"")
+        public String getFetchMode();
+
+        @Config("copy_format")
+        @ConfigDefault("\"binary\"")
+        public String getCopyFormat();
+
+        @Config("prefetch")
+        @ConfigDefault("false")
+        public boolean getPrefetch();
+
+        @Config("consistent_snapshot")
+        @ConfigDefault("\"none\"")
+        public String getConsistentSnapshot();
+
+        public Optional<String> getSnapshotId();
+        public void setSnapshotId(Optional<String> snapshotId);
+
+        public List<CitusShardPlacement> getShardPlacements();
+        public void setShardPlacements(List<CitusShardPlacement> shardPlacements);
     }
 
     @Override
@@ -75,11 +109,36 @@ public class PostgreSQLInputPlugin
     protected PostgreSQLInputConnection newConnection(PluginTask task) throws SQLException
     {
         PostgreSQLPluginTask t = (PostgreSQLPluginTask) task;
+        return newConnection(t, t.getHost(), t.getPort(), t.getDatabase(), t.getSchema());
+    }
+
+    @Override
+    protected boolean supportsTargets()
+    {
+        return true;
+    }
+
+    @Override
+    protected boolean supportsReplicationLag()
+    {
+        return true;
+    }
+
+    @Override
+    protected PostgreSQLInputConnection newConnection(PluginTask task, JdbcTarget target) throws SQLException
+    {
+        PostgreSQLPluginTask t = (PostgreSQLPluginTask) task;
+        return newConnection(t, target.getHost().orElse(t.getHost()), target.getPort().orElse(t.getPort()),
+                target.getDatabase().orElse(t.getDatabase()), target.getSchema().orElse(t.getSchema()));
+    }
 
+    private PostgreSQLInputConnection newConnection(PostgreSQLPluginTask t, String host, int port,
+            String database, String schema) throws SQLException
+    {
         this.loadPgJdbcDriver("org.postgresql.Driver", t.getDriverPath());
 
         String url = String.format("jdbc:postgresql://%s:%d/%s",
-                t.getHost(), t.getPort(), t.getDatabase());
+                host, port, database);
 
         Properties props = new Properties();
         props.setProperty("user", t.getUser());
@@ -104,16 +163,237 @@ public class PostgreSQLInputPlugin
         props.putAll(t.getOptions());
         logConnectionProperties(url, props);
 
-        Connection con = DriverManager.getConnection(url, props);
+        Connection con = connect(t, url, props, () -> DriverManager.getConnection(url, props));
         try {
-            PostgreSQLInputConnection c = new PostgreSQLInputConnection(con, t.getSchema(), t.getStatementTimeoutMillis());
+            Optional<String> copyFormat = t.getFetchMode().equals("copy") ? Optional.of(t.getCopyFormat()) : Optional.<String>empty();
+            PostgreSQLInputConnection c = new PostgreSQLInputConnection(con, schema, t.getStatementTimeoutMillis(), copyFormat, t.getPrefetch());
             con = null;
             return c;
         } finally {
             if (con != null) {
+                JdbcConnectionLimiter.close(con);
+            }
+        }
+    }
+
+    @Override
+    protected Schema setupTask(JdbcInputConnection con, PluginTask task) throws SQLException
+    {
+        PostgreSQLPluginTask t = (PostgreSQLPluginTask) task;
+        t.setShardPlacements(Collections.<CitusShardPlacement>emptyList());
+        switch (t.getFetchMode()) {
+        case "cursor":
+            if (t.getPrefetch() && t.getKeysetPagination()) {
+                // keyset pagination runs a query for each chunk instead of fetching from a cursor
+                throw new ConfigException("prefetch can't be used if keyset_pagination is true");
+            }
+            if (t.getPrefetch() && t.getFetchRows() < 1) {
+                // FETCH FORWARD 0 returns the current row again instead of the next rows
+                throw new ConfigException(String.format(Locale.ENGLISH, "fetch_rows must be greater than 0 if prefetch is true, but got %d", t.getFetchRows()));
+            }
+            return super.setupTask(con, task);
+        case "copy":
+            checkCopyMode(t);
+            break;
+        default:
+            throw new ConfigException(String.format("Unknown fetch_mode '%s'. It must be 'cursor' or 'copy'",
+                        t.getFetchMode()));
+        }
+
+        Schema schema = super.setupTask(con, task);
+        ((PostgreSQLInputConnection) con).newCopyDecoders(task.getQuerySchema());
+        for (JdbcPartition partition : task.getPartitions()) {
+            // COPY doesn't take parameters. Ranges are compared with parameters.
+            if (!partition.getParameters().isEmpty()) {
+                throw new ConfigException("Partitions by ranges can't be used if fetch_mode is 'copy'. Use partition_type 'ctid' or 'hash' instead");
+            }
+        }
+        return schema;
+    }
+
+    // COPY decodes the values by the types of the columns instead of the column getters
+    private void checkCopyMode(PostgreSQLPluginTask task)
+    {
+        if (!task.getCopyFormat().equals("binary") && !task.getCopyFormat().equals("text")) {
+            throw new ConfigException(String.format("Unknown copy_format '%s'. It must be 'binary' or 'text'",
+                        task.getCopyFormat()));
+        }
+        if (!task.getColumnOptions().isEmpty() || !task.getDefaultColumnOptions().isEmpty()) {
+            throw new ConfigException("column_options and default_column_options can't be used if fetch_mode is 'copy'");
+        }
+        if (task.getIncremental()) {
+            throw new ConfigException("incremental can't be used if fetch_mode is 'copy'");
+        }
+        if (task.getPartitionSplitTimeout().isPresent()) {
+            throw new ConfigException("partition_split_timeout can't be used if fetch_mode is 'copy'");
+        }
+        if (task.getKeysetPagination()) {
+            throw new ConfigException("keyset_pagination can't be used if fetch_mode is 'copy'");
+        }
+        if (task.getPrefetch()) {
+            // COPY streams the rows without waiting for the client
+            throw new ConfigException("prefetch can't be used if fetch_mode is 'copy'");
+        }
+    }
+
+    @Override
+    protected List<JdbcPartition> buildPartitions(JdbcInputConnection con, PluginTask task, JdbcSchema querySchema,
+            String partitionType, int partitionCount) throws SQLException
+    {
+        switch (partitionType) {
+        case "ctid":
+            return buildCtidPartitions((PostgreSQLInputConnection) con, task, partitionCount);
+        case "citus":
+            return buildCitusPartitions((PostgreSQLInputConnection) con, (PostgreSQLPluginTask) task);
+        default:
+            return super.buildPartitions(con, task, querySchema, partitionType, partitionCount);
+        }
+    }
+
+    // Each task reads a shard of a Citus distributed table from a worker node that has it. The
+    // connection of the i-th task is made to the node of the i-th shard placement.
+    private List<JdbcPartition> buildCitusPartitions(PostgreSQLInputConnection con, PostgreSQLPluginTask task)
+            throws SQLException
+    {
+        if (!task.getTable().isPresent()) {
+            throw new ConfigException("table option is required if partition_type is 'citus'");
+        }
+        if (task.getPartitionBy().isPresent()) {
+            throw new ConfigException("partition_by option must not be set if partition_type is 'citus'");
+        }
+        if (!task.getConsistentSnapshot().equals("none")) {
+            // the snapshot of the coordinator can't be imported into the worker nodes
+            throw new ConfigException("consistent_snapshot can't be used if partition_type is 'citus'");
+        }
+        if (!task.getTargets().isEmpty() || !task.getReplicas().isEmpty()) {
+            throw new ConfigException("targets and replicas options can't be used if partition_type is 'citus'");
+        }
+        if (task.getFetchConnections() > 1 || task.getPartitionChunks() > 1) {
+            // the connection of a task is made to the node of its shard
+            throw new ConfigException("fetch_connections and partition_chunks must be 1 if partition_type is 'citus'");
+        }
+
+        List<CitusShardPlacement> placements = CitusShardPlacement.selectPlacements(
+                con.getCitusShardPlacements(task.getTable().get()));
+        if (placements.isEmpty()) {
+            throw new ConfigException(String.format(Locale.ENGLISH,
+                        "Table '%s' is not a distributed table of Citus", task.getTable().get()));
+        }
+        for (CitusShardPlacement placement : placements) {
+            logger.info("Shard placement: {}", placement);
+        }
+        task.setShardPlacements(placements);
+
+        final ArrayList<JdbcPartition> partitions = new ArrayList<>();
+        for (CitusShardPlacement placement : placements) {
+            partitions.add(new JdbcPartition(placement.getShardName()));
+        }
+        return Collections.unmodifiableList(partitions);
+    }
+
+    // Splits the heap of the table into ranges of blocks. PostgreSQL 14 or later reads each range
+    // by TID Range Scan.
+    private List<JdbcPartition> buildCtidPartitions(PostgreSQLInputConnection con, PluginTask task,
+            int partitionCount) throws SQLException
+    {
+        if (!task.getTable().isPresent()) {
+            throw new ConfigException("table option is required if partition_type is 'ctid'");
+        }
+        if (task.getPartitionBy().isPresent()) {
+            throw new ConfigException("partition_by option must not be set if partition_type is 'ctid'");
+        }
+
+        long pages = con.getRelationPages(task.getTable().get());
+        int count = (int) Math.min(pages, partitionCount);
+        if (count <= 1) {
+            return Collections.emptyList();
+        }
+
+        final ArrayList<JdbcPartition> partitions = new ArrayList<>();
+        long start = 0;
+        for (int i = 0; i < count; i++) {
+            // the last range is left open for rows appended after getting the number of pages
+            long end = pages * (i + 1) / count;
+            String condition;
+            if (i == 0) {
+                condition = String.format(Locale.ENGLISH, "ctid < '(%d,0)'::tid", end);
+            }
+            else if (i == count - 1) {
+                condition = String.format(Locale.ENGLISH, "ctid >= '(%d,0)'::tid", start);
+            }
+            else {
+                condition = String.format(Locale.ENGLISH, "ctid >= '(%d,0)'::tid AND ctid < '(%d,0)'::tid", start, end);
+            }
+            partitions.add(new JdbcPartition(condition, Collections.<JdbcLiteral>emptyList()));
+            start = end;
+        }
+        return Collections.unmodifiableList(partitions);
+    }
+
+    @Override
+    protected JdbcSnapshot beginSnapshot(PluginTask task, int taskCount) throws SQLException
+    {
+        PostgreSQLPluginTask t = (PostgreSQLPluginTask) task;
+        t.setSnapshotId(Optional.<String>empty());
+
+        switch (t.getConsistentSnapshot()) {
+        case "none":
+            return super.beginSnapshot(task, taskCount);
+        case "export":
+            if (!task.getTargets().isEmpty() || !task.getReplicas().isEmpty()) {
+                throw new ConfigException("consistent_snapshot can't be used with targets or replicas option");
+            }
+            if (task.getRetryLimit() > 0) {
+                // the snapshot is lost with the connection that exported it by a failover
+                throw new ConfigException("consistent_snapshot can't be used with retry_limit option");
+            }
+            // the coordinator holds a connection of connection_limit until all tasks finish
+            int connectionCount = task.getFetchConnections() + 1;
+            if (task.getConnectionLimit().isPresent() && task.getConnectionLimit().get() < connectionCount) {
+                throw new ConfigException(String.format(
+                            "consistent_snapshot requires connection_limit to be at least %d, but got %d",
+                            connectionCount, task.getConnectionLimit().get()));
+            }
+            break;
+        default:
+            throw new ConfigException(String.format("Unknown consistent_snapshot '%s'. It must be 'none' or 'export'",
+                        t.getConsistentSnapshot()));
+        }
+
+        // The coordinator keeps its transaction open until all tasks finish because the exported
+        // snapshot is available only while the transaction is open.
+        PostgreSQLInputConnection coordinator = newConnection(task);
+        try {
+            String snapshotId = coordinator.exportSnapshot();
+            logger.info("Exported snapshot '{}'", snapshotId);
+            t.setSnapshotId(Optional.of(snapshotId));
+            return coordinator::close;
+        } catch (SQLException | RuntimeException ex) {
+            coordinator.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    protected JdbcInputConnection newTaskConnection(PluginTask task, int taskIndex) throws SQLException
+    {
+        PostgreSQLPluginTask t = (PostgreSQLPluginTask) task;
+        // shard placements are used only if partitioning isn't disabled
+        if (!t.getShardPlacements().isEmpty() && !t.getPartitions().isEmpty()) {
+            CitusShardPlacement placement = t.getShardPlacements().get(taskIndex);
+            return newConnection(t, placement.getNodeName(), placement.getNodePort(), t.getDatabase(), t.getSchema());
+        }
+
+        PostgreSQLInputConnection con = (PostgreSQLInputConnection) super.newTaskConnection(task, taskIndex);
+        if (t.getSnapshotId().isPresent()) {
+            try {
+                con.importSnapshot(t.getSnapshotId().get());
+            } catch (SQLException | RuntimeException ex) {
                 con.close();
+                throw ex;
             }
         }
+        return con;
     }
 
     @Override
@@ -0,0 +1,24 @@
+package org.embulk.input.postgresql.copy;
+
+import java.time.Instant;
+
+import org.msgpack.value.Value;
+
+// Receives the decoded values of a tuple by the column index. PageBuilderRecordSink adds them to
+// a page. Tests record them instead.
+public interface CopyRecordSink
+{
+    public void setNull(int index);
+
+    public void setBoolean(int index, boolean value);
+
+    public void setLong(int index, long value);
+
+    public void setDouble(int index, double value);
+
+    public void setString(int index, String value);
+
+    public void setJson(int index, Value value);
+
+    public void setTimestamp(int index, Instant value);
+}
@@ -0,0 +1,206 @@
+package org.embulk.input.postgresql.copy;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.embulk.spi.DataException;
+
+import static java.util.Locale.ENGLISH;
+
+// Reads tuples of COPY ... TO STDOUT in the binary or the text format, and decodes their values
+// into a sink.
+public class CopyTupleReader
+{
+    // "PGCOPY\n\377\r\n\0"
+    private static final byte[] BINARY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0};
+
+    private final DataInputStream in;
+    private final boolean binary;
+    private final List<CopyValueDecoder> decoders;
+
+    private boolean headerRead = false;
+    private boolean finished = false;
+    private byte[] buffer = new byte[1024];
+
+    public CopyTupleReader(InputStream in, boolean binary, List<CopyValueDecoder> decoders)
+    {
+        this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        this.binary = binary;
+        this.decoders = decoders;
+    }
+
+    // Returns false if no tuples remain
+    public boolean readTuple(CopyRecordSink to) throws IOException
+    {
+        if (finished) {
+            return false;
+        }
+        return binary ? readBinaryTuple(to) : readTextTuple(to);
+    }
+
+    // The binary format is the header, tuples and the trailer. A tuple is the number of fields and
+    // the fields. A field is its length (-1 is NULL) and the value.
+    private boolean readBinaryTuple(CopyRecordSink to) throws IOException
+    {
+        if (!headerRead) {
+            byte[] signature = new byte[BINARY_SIGNATURE.length];
+            in.readFully(signature);
+            if (!Arrays.equals(signature, BINARY_SIGNATURE)) {
+                throw new DataException("Invalid signature of the binary COPY data");
+            }
+            in.readInt();  // flags
+            int extensionLength = in.readInt();
+            if (in.skipBytes(extensionLength) != extensionLength) {
+                throw new EOFException();
+            }
+            headerRead = true;
+        }
+
+        int fieldCount = in.readShort();
+        if (fieldCount == -1) {
+            finished = true;
+            return false;
+        }
+        checkFieldCount(fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            int length = in.readInt();
+            if (length == -1) {
+                to.setNull(i);
+                continue;
+            }
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+            decoders.get(i).decodeBinary(buffer, 0, length, i, to);
+        }
+        return true;
+    }
+
+    // The text format is a line for each tuple. Fields are separated by tabs. \N is NULL. Other
+    // backslashes escape special characters.
+    private boolean readTextTuple(CopyRecordSink to) throws IOException
+    {
+        int length = 0;
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                if (length > 0) {
+                    throw new EOFException("Unexpected end of a line of the text COPY data");
+                }
+                finished = true;
+                return false;
+            }
+            if (buffer.length <= length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[length++] = (byte) b;
+        }
+
+        int fieldCount = 0;
+        int start = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || buffer[i] == '\t') {
+                if (fieldCount >= decoders.size()) {
+                    checkFieldCount(fieldCount + 1);
+                }
+                if (i - start == 2 && buffer[start] == '\\' && buffer[start + 1] == 'N') {
+                    to.setNull(fieldCount);
+                }
+                else {
+                    decoders.get(fieldCount).decodeText(unescape(buffer, start, i), fieldCount, to);
+                }
+                fieldCount++;
+                start = i + 1;
+            }
+        }
+        checkFieldCount(fieldCount);
+        return true;
+    }
+
+    static String unescape(byte[] bytes, int start, int end)
+    {
+        int i = start;
+        while (i < end && bytes[i] != '\\') {
+            i++;
+        }
+        if (i == end) {
+            return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(end - start);
+        out.write(bytes, start, i - start);
+        while (i < end) {
+            byte b = bytes[i++];
+            if (b != '\\' || i == end) {
+                out.write(b);
+                continue;
+            }
+            b = bytes[i++];
+            switch (b) {
+            case 'b':
+                out.write('\b');
+                break;
+            case 'f':
+                out.write('\f');
+                break;
+            case 'n':
+                out.write('\n');
+                break;
+            case 'r':
+                out.write('\r');
+                break;
+            case 't':
+                out.write('\t');
+                break;
+            case 'v':
+                out.write(0x0b);
+                break;
+            case 'x':
+                {
+                    int value = 0;
+                    int digits = 0;
+                    while (digits < 2 && i < end && Character.digit(bytes[i], 16) >= 0) {
+                        value = value * 16 + Character.digit(bytes[i++], 16);
+                        digits++;
+                    }
+                    if (digits == 0) {
+                        out.write('x');
+                    }
+                    else {
+                        out.write(value);
+                    }
+                }
+                break;
+            default:
+                if (b >= '0' && b <= '7') {
+                    int value = b - '0';
+                    for (int digits = 1; digits < 3 && i < end && bytes[i] >= '0' && bytes[i] <= '7'; digits++) {
+                        value = value * 8 + (bytes[i++] - '0');
+                    }
+                    out.write(value);
+                }
+                else {
+                    out.write(b);
+                }
+                break;
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void checkFieldCount(int fieldCount)
+    {
+        if (fieldCount != decoders.size()) {
+            throw new DataException(String.format(ENGLISH, "COPY data has %d fields but %d columns are expected",
+                        fieldCount, decoders.size()));
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package org.embulk.input.postgresql.copy;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.embulk.spi.DataException;
+import org.embulk.util.json.JsonParseException;
+import org.embulk.util.json.JsonParser;
+import org.msgpack.value.Value;
+
+import static java.util.Locale.ENGLISH;
+
+// Decodes a value of a column in the binary or the text format of COPY. Values are converted to
+// the same types as the default column getters of the type.
+public abstract class CopyValueDecoder
+{
+    // 2000-01-01 00:00:00 UTC
+    static final long POSTGRES_EPOCH_SECONDS = 946684800L;
+    static final long POSTGRES_EPOCH_DAYS = 10957L;
+
+    // PGStatement.DATE_POSITIVE_INFINITY and DATE_NEGATIVE_INFINITY returned by the JDBC driver
+    static final Instant POSITIVE_INFINITY = Instant.ofEpochMilli(9223372036825200000L);
+    static final Instant NEGATIVE_INFINITY = Instant.ofEpochMilli(-9223372036832400000L);
+
+    // "2020-01-02", "2020-01-02 03:04:05.123456" or "2020-01-02 03:04:05+09:30" in DateStyle ISO
+    private static final Pattern DATE_TIME_PATTERN = Pattern.compile(
+            "(\\d+)-(\\d\\d)-(\\d\\d)(?: (\\d\\d):(\\d\\d):(\\d\\d)(?:\\.(\\d{1,9}))?)?(?:([+-]\\d\\d)(?::(\\d\\d))?(?::(\\d\\d))?)?( BC)?");
+
+    public abstract void decodeBinary(byte[] bytes, int offset, int length, int index, CopyRecordSink to);
+
+    public abstract void decodeText(String text, int index, CopyRecordSink to);
+
+    // Columns of types without binary decoding are cast to text if the format is binary
+    public boolean isBinarySupported()
+    {
+        return true;
+    }
+
+    // Returns empty if the type isn't supported
+    public static Optional<CopyValueDecoder> of(String typeName)
+    {
+        switch (typeName) {
+        case "bool":
+            return Optional.of(new BooleanDecoder());
+        case "int2":
+        case "smallserial":
+            return Optional.of(new IntegerDecoder(2));
+        case "int4":
+        case "serial":
+            return Optional.of(new IntegerDecoder(4));
+        case "int8":
+        case "bigserial":
+            return Optional.of(new IntegerDecoder(8));
+        case "oid":
+            return Optional.of(new OidDecoder());
+        case "float4":
+            return Optional.of(new FloatDecoder(true));
+        case "float8":
+            return Optional.of(new FloatDecoder(false));
+        case "numeric":
+            return Optional.of(new NumericDecoder());
+        case "text":
+        case "varchar":
+        case "bpchar":
+        case "name":
+        case "citext":
+            return Optional.of(new StringDecoder(true));
+        case "uuid":
+            return Optional.of(new UuidDecoder());
+        case "json":
+            return Optional.of(new JsonDecoder(false));
+        case "jsonb":
+            return Optional.of(new JsonDecoder(true));
+        case "date":
+            return Optional.of(new DateDecoder());
+        case "timestamp":
+            return Optional.of(new TimestampDecoder(false));
+        case "timestamptz":
+            return Optional.of(new TimestampDecoder(true));
+        case "hstore":
+            return Optional.of(new StringDecoder(false));
+        default:
+            if (typeName.startsWith("_")) {
+                // arrays are converted to string by default
+                return Optional.of(new StringDecoder(false));
+            }
+            return Optional.empty();
+        }
+    }
+
+    static String decodeString(byte[] bytes, int offset, int length)
+    {
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private static DataException invalidValue(String typeName, String text)
+    {
+        return new DataException(String.format(ENGLISH, "Invalid %s value '%s' in the COPY data", typeName, text));
+    }
+
+    private static DataException invalidLength(String typeName, int length)
+    {
+        return new DataException(String.format(ENGLISH, "Invalid length %d of a binary %s value in the COPY data", length, typeName));
+    }
+
+    static class BooleanDecoder
+            extends CopyValueDecoder
+    {
+        @Override
+        public void decodeBinary(byte[] bytes, int offset, int length, int index, CopyRecordSink to)
+        {
+            if (length != 1) {
+                throw invalidLength("bool", length);
+            }
+            to.setBoolean(index, bytes[offset] != 0);
+        }
+
+        @Override
+        public void decodeText(String text, int index, CopyRecordSink to)
+        {
+            to.setBoolean(index, text.equals("t"));
+        }
+    }
+
+    static class IntegerDecoder
+            extends CopyValueDecoder
+    {
+        private final int size;
+
+        IntegerDecoder(int size)
+        {
+            this.size = size;
+        }
+
+        @Override
+        public void decodeBinary(byte[] bytes, int offset, int length, int index, CopyRecordSink to)
+        {
+            if (length != size) {
+                throw invalidLength("integer", length);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            switch (size) {
+            case 2:
+                to.setLong(index, buffer.getShort());
+                break;
+            case 4:
+                to.setLong(index, buffer.getInt());
+                break;
+            default:
+                to.setLong(index, buffer.getLong());
+                break;
+            }
+        }
+
+        @Override
+        public void decodeText(String text, int index, CopyRecordSink to)
+        {
+            try {
+                to.setLong(index, Long.parseLong(text));
+            } catch (NumberFormatException ex) {
+                throw invalidValue("integer", text);
+            }
+        }
+    }
+
+    // oid is an unsigned 4-byte integer
+    static class OidDecoder
+            extends IntegerDecoder
+    {
+        OidDecoder()
+        {
+            super(4);
+        }
+
+        @Override
+        public void decodeBinary(byte[] bytes, int offset, int length, int index, CopyRecordSink to)
+        {
+            if (length != 4) {
+                throw invalidLength("oid", length);
+            }
+            to.setLong(index, ByteBuffer.wrap(bytes, offset, length).getInt() & 0xffffffffL);
+        }
+    }
+
+    static class FloatDecoder
+            extends CopyValueDecoder
+    {
+        private final boolean single;
+
+        // float4 is converted to double through float like ResultSet.getFloat
+        FloatDecoder(boolean single)
+        {
+            this.single = single;
+        }
+
+        @Override
+        public void decodeBinary(byte[] bytes, int offset, int length, int index, CopyRecordSink to)
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            switch (length) {
+            case 4:
+                to.setDouble(index, buffer.getFloat());
+                break;
+            case 8:
+                to.setDouble(index, buffer.getDouble());
+                break;
+            default:
+                throw invalidLength("float", length);
+            }
+        }
+
+        @Override
+        public void decodeText(String text, int index, CopyRecordSink to)
+        {
+            try {
+                to.setDouble(index, single ? Float.parseFloat(text) : Double.parseDouble(text));
+            } catch (NumberFormatException ex) {
+                throw invalidValue("float", text);
+            }
+        }
+    }
+
+    // The binary numeric is the number of digits, the weight of the first digit, the sign, the
+    // display scale and the digits in base 10000.
+    static class NumericDecoder
+            extends FloatDecoder
+    {
+        private static final int SIGN_NEGATIVE = 0x4000;
+        private static final int SIGN_NAN = 0xc000;
+        private static final int SIGN_POSITIVE_INFINITY = 0xd000;
+        private static final int SIGN_NEGATIVE_INFINITY = 0xf000;
+        private static final BigInteger BASE = BigInteger.valueOf(10000);
+
+        NumericDecoder()
+        {
+            super(false);
+        }
+
+        @Override
+        public void decodeBinary(byte[] bytes, int offset, int length, int index, CopyRecordSink to)
+        {
+            if (length < 8) {
+                throw invalidLength("numeric", length);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            int digitCount = buffer.getShort();
+            int weight = buffer.getShort();
+            int sign = buffer.getShort() & 0xffff;
+            buffer.getShort();  // display scale
+            if (length != 8 + digitCount * 2) {
+                throw invalidLength("numeric", length);
+            }
+
+            switch (sign) {
+            case SIGN_NAN:
+                to.setDouble(index, Double.NaN);
+                return;
+            case SIGN_POSITIVE_INFINITY:
+                to.setDouble(index, Double.POSITIVE_INFINITY);
+                return;
+            case SIGN_NEGATIVE_INFINITY:
+                to.setDouble(index, Double.NEGATIVE_INFINITY);
+                return;
+            default:
+                break;
+            }
+
+            BigInteger unscaled = BigInteger.ZERO;
+            for (int i = 0; i < digitCount; i++) {
+                unscaled = unscaled.multiply(BASE).add(BigInteger.valueOf(buffer.getShort()));
+            }
+            // the last digit is at 10000^(weight - digitCount + 1)
+            BigDecimal value = new BigDecimal(unscaled).scaleByPowerOfTen(4 * (weight - digitCount + 1));
+            to.setDouble(index, sign == SIGN_NEGATIVE ? -value.doubleValue() : value.doubleValue());
+        }
+    }
+
+    static class StringDecoder
+            extends CopyValueDecoder
+    {
+        private final boolean binarySupported;
+
+        StringDecoder(boolean binarySupported)
+        {
+            this.binarySupported = binarySupported;
+        }
+
+        @Override
+        public void decodeBinary(byte[] bytes, int offset, int length, int index, CopyRecordSink to)
+        {
+            to.setString(index, decodeString(bytes, offset, length));
+        }
+
+        @Override
+        public void decodeText(String text, int index, CopyRecordSink to)
+        {
+            to.setString(index, text);
+        }
+
+        @Override
+        public boolean isBinarySupported()
+        {
+            return binarySupported;
+        }
+    }
+
+    static class UuidDecoder
+            extends StringDecoder
+    {
+        UuidDecoder()
+        {
+            super(true);
+        }
+
+        @Override
+        public void decodeBinary(byte[] bytes, int offset, int length, int index, CopyRecordSink to)
+        {
+            if (length != 16) {
+                throw invalidLength("uuid", length);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            to.setString(index, new UUID(buffer.getLong(), buffer.getLong()).toString());
+        }
+    }
+
+    // The binary jsonb is the version 1 and the text
+    static class JsonDecoder
+            extends CopyValueDecoder
+    {
+        private final JsonParser jsonParser = new JsonParser();
+        private final boolean jsonb;
+
+        JsonDecoder(boolean jsonb)
+        {
+            this.jsonb = jsonb;
+        }
+
+        @Override
+        public void decodeBinary(byte[] bytes, int offset, int length, int index, CopyRecordSink to)
+        {
+            if (jsonb) {
+                if (length < 1 || bytes[offset] != 1) {
+                    throw new DataException("Unsupported version of a binary jsonb value in the COPY data");
+                }
+                decodeText(decodeString(bytes, offset + 1, length - 1), index, to);
+            }
+            else {
+                decodeText(decodeString(bytes, offset, length), index, to);
+            }
+        }
+
+        @Override
+        public void decodeText(String text, int index, CopyRecordSink to)
+        {
+            Value value;
+            try {
+                value = jsonParser.parse(text);
+            } catch (JsonParseException ex) {
+                to.setNull(index);
+                return;
+            }
+            to.setJson(index, value);
+        }
+    }
+
+    // The binary date is days since 2000-01-01. Dates are converted to the start of the day in the
+    // JVM default time zone like ResultSet.getDate.
+    static class DateDecoder
+            extends CopyValueDecoder
+    {
+        @Override
+        public void decodeBinary(byte[] bytes, int offset, int length, int index, CopyRecordSink to)
+        {
+            if (length != 4) {
+                throw invalidLength("date", length);
+            }
+            int days = ByteBuffer.wrap(bytes, offset, length).getInt();
+            if (days == Integer.MAX_VALUE) {
+                to.setTimestamp(index, POSITIVE_INFINITY);
+            }
+            else if (days == Integer.MIN_VALUE) {
+                to.setTimestamp(index, NEGATIVE_INFINITY);
+            }
+            else {
+                to.setTimestamp(index, LocalDate.ofEpochDay(POSTGRES_EPOCH_DAYS + days).atStartOfDay(ZoneId.systemDefault()).toInstant());
+            }
+        }
+
+        @Override
+        public void decodeText(String text, int index, CopyRecordSink to)
+        {
+            Optional<Instant> infinity = parseInfinity(text);
+            if (infinity.isPresent()) {
+                to.setTimestamp(index, infinity.get());
+                return;
+            }
+            to.setTimestamp(index, parseDateTime("date", text).atZone(ZoneId.systemDefault()).toInstant());
+        }
+    }
+
+    // The binary timestamp is microseconds since 2000-01-01 00:00:00. Values without time zone
+    // are in the JVM default time zone like ResultSet.getTimestamp. Values with time zone are in
+    // UTC.
+    static class TimestampDecoder
+            extends CopyValueDecoder
+    {
+        private final boolean withTimeZone;
+
+        TimestampDecoder(boolean withTimeZone)
+        {
+            this.withTimeZone = withTimeZone;
+        }
+
+        @Override
+        public void decodeBinary(byte[] bytes, int offset, int length, int index, CopyRecordSink to)
+        {
+            if (length != 8) {
+                throw invalidLength("timestamp", length);
+            }
+            long micros = ByteBuffer.wrap(bytes, offset, length).getLong();
+            if (micros == Long.MAX_VALUE) {
+                to.setTimestamp(index, POSITIVE_INFINITY);
+                return;
+            }
+            else if (micros == Long.MIN_VALUE) {
+                to.setTimestamp(index, NEGATIVE_INFINITY);
+                return;
+            }
+
+            long seconds = POSTGRES_EPOCH_SECONDS + Math.floorDiv(micros, 1000000L);
+            int nanos = (int) Math.floorMod(micros, 1000000L) * 1000;
+            if (withTimeZone) {
+                to.setTimestamp(index, Instant.ofEpochSecond(seconds, nanos));
+            }
+            else {
+                to.setTimestamp(index, LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC)
+                        .atZone(ZoneId.systemDefault()).toInstant());
+            }
+        }
+
+        @Override
+        public void decodeText(String text, int index, CopyRecordSink to)
+        {
+            Optional<Instant> infinity = parseInfinity(text);
+            if (infinity.isPresent()) {
+                to.setTimestamp(index, infinity.get());
+                return;
+            }
+
+            Matcher matcher = DATE_TIME_PATTERN.matcher(text);
+            if (!matcher.matches()) {
+                throw invalidValue("timestamp", text);
+            }
+            LocalDateTime time = toLocalDateTime(matcher);
+            if (withTimeZone) {
+                if (matcher.group(8) == null) {
+                    throw invalidValue("timestamptz", text);
+                }
+                int hours = Integer.parseInt(matcher.group(8));
+                int minutes = matcher.group(9) == null ? 0 : Integer.parseInt(matcher.group(9));
+                int seconds = matcher.group(10) == null ? 0 : Integer.parseInt(matcher.group(10));
+                ZoneOffset offset = matcher.group(8).startsWith("-")
+                    ? ZoneOffset.ofHoursMinutesSeconds(hours, -minutes, -seconds)
+                    : ZoneOffset.ofHoursMinutesSeconds(hours, minutes, seconds);
+                to.setTimestamp(index, time.toInstant(offset));
+            }
+            else {
+                to.setTimestamp(index, time.atZone(ZoneId.systemDefault()).toInstant());
+            }
+        }
+    }
+
+    private static Optional<Instant> parseInfinity(String text)
+    {
+        switch (text) {
+        case "infinity":
+            return Optional.of(POSITIVE_INFINITY);
+        case "-infinity":
+            return Optional.of(NEGATIVE_INFINITY);
+        default:
+            return Optional.empty();
+        }
+    }
+
+    private static LocalDateTime parseDateTime(String typeName, String text)
+    {
+        Matcher matcher = DATE_TIME_PATTERN.matcher(text);
+        if (!matcher.matches()) {
+            throw invalidValue(typeName, text);
+        }
+        return toLocalDateTime(matcher);
+    }
+
+    private static LocalDateTime toLocalDateTime(Matcher matcher)
+    {
+        int year = Integer.parseInt(matcher.group(1));
+        if (matcher.group(11) != null) {
+            year = 1 - year;  // 1 BC is the year 0
+        }
+        LocalDate date = LocalDate.of(year, Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)));
+        if (matcher.group(4) == null) {
+            return date.atStartOfDay();
+        }
+        int nanos = 0;
+        if (matcher.group(7) != null) {
+            nanos = Integer.parseInt((matcher.group(7) + "00000000").substring(0, 9));
+        }
+        return date.atTime(Integer.parseInt(matcher.group(4)), Integer.parseInt(matcher.group(5)),
+                Integer.parseInt(matcher.group(6)), nanos);
+    }
+}
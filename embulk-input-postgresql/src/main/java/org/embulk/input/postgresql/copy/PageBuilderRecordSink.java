@@ -0,0 +1,63 @@
+package org.embulk.input.postgresql.copy;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.embulk.spi.Column;
+import org.embulk.spi.PageBuilder;
+import org.msgpack.value.Value;
+
+public class PageBuilderRecordSink
+        implements CopyRecordSink
+{
+    private final PageBuilder to;
+    private final List<Column> columns;
+
+    public PageBuilderRecordSink(PageBuilder to)
+    {
+        this.to = to;
+        this.columns = to.getSchema().getColumns();
+    }
+
+    @Override
+    public void setNull(int index)
+    {
+        to.setNull(columns.get(index));
+    }
+
+    @Override
+    public void setBoolean(int index, boolean value)
+    {
+        to.setBoolean(columns.get(index), value);
+    }
+
+    @Override
+    public void setLong(int index, long value)
+    {
+        to.setLong(columns.get(index), value);
+    }
+
+    @Override
+    public void setDouble(int index, double value)
+    {
+        to.setDouble(columns.get(index), value);
+    }
+
+    @Override
+    public void setString(int index, String value)
+    {
+        to.setString(columns.get(index), value);
+    }
+
+    @Override
+    public void setJson(int index, Value value)
+    {
+        to.setJson(columns.get(index), value);
+    }
+
+    @Override
+    public void setTimestamp(int index, Instant value)
+    {
+        to.setTimestamp(columns.get(index), org.embulk.spi.time.Timestamp.ofInstant(value));
+    }
+}
@@ -0,0 +1,77 @@
+package org.embulk.input.postgresql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CitusShardPlacementTest
+{
+    @Test
+    public void testSelectPlacements()
+    {
+        List<CitusShardPlacement> selected = CitusShardPlacement.selectPlacements(Arrays.asList(
+                    new CitusShardPlacement(1, "t_1", "worker1", 5432),
+                    new CitusShardPlacement(2, "t_2", "worker2", 5432),
+                    new CitusShardPlacement(3, "t_3", "worker1", 5432)));
+        assertThat(shardIds(selected), is(Arrays.asList(1L, 2L, 3L)));
+        assertThat(nodes(selected), is(Arrays.asList("worker1:5432", "worker2:5432", "worker1:5432")));
+    }
+
+    @Test
+    public void testSelectPlacementsWithReplicas()
+    {
+        // every shard is replicated to 2 nodes
+        List<CitusShardPlacement> selected = CitusShardPlacement.selectPlacements(Arrays.asList(
+                    new CitusShardPlacement(1, "t_1", "worker1", 5432),
+                    new CitusShardPlacement(1, "t_1", "worker2", 5432),
+                    new CitusShardPlacement(2, "t_2", "worker1", 5432),
+                    new CitusShardPlacement(2, "t_2", "worker2", 5432),
+                    new CitusShardPlacement(3, "t_3", "worker2", 5432),
+                    new CitusShardPlacement(3, "t_3", "worker3", 5432),
+                    new CitusShardPlacement(4, "t_4", "worker1", 5432),
+                    new CitusShardPlacement(4, "t_4", "worker3", 5432)));
+        assertThat(shardIds(selected), is(Arrays.asList(1L, 2L, 3L, 4L)));
+        assertThat(nodes(selected), is(Arrays.asList("worker1:5432", "worker2:5432", "worker3:5432", "worker1:5432")));
+    }
+
+    @Test
+    public void testSelectPlacementsOfDifferentPorts()
+    {
+        List<CitusShardPlacement> selected = CitusShardPlacement.selectPlacements(Arrays.asList(
+                    new CitusShardPlacement(1, "t_1", "localhost", 9701),
+                    new CitusShardPlacement(1, "t_1", "localhost", 9702),
+                    new CitusShardPlacement(2, "t_2", "localhost", 9701),
+                    new CitusShardPlacement(2, "t_2", "localhost", 9702)));
+        assertThat(nodes(selected), is(Arrays.asList("localhost:9701", "localhost:9702")));
+    }
+
+    @Test
+    public void testSelectPlacementsOfNoShards()
+    {
+        assertThat(CitusShardPlacement.selectPlacements(Collections.<CitusShardPlacement>emptyList()).isEmpty(), is(true));
+    }
+
+    private static List<Long> shardIds(List<CitusShardPlacement> placements)
+    {
+        List<Long> shardIds = new ArrayList<>();
+        for (CitusShardPlacement placement : placements) {
+            shardIds.add(placement.getShardId());
+        }
+        return shardIds;
+    }
+
+    private static List<String> nodes(List<CitusShardPlacement> placements)
+    {
+        List<String> nodes = new ArrayList<>();
+        for (CitusShardPlacement placement : placements) {
+            nodes.add(placement.getNodeName() + ":" + placement.getNodePort());
+        }
+        return nodes;
+    }
+}
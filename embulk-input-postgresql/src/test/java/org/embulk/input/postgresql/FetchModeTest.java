@@ -0,0 +1,199 @@
+package org.embulk.input.postgresql;
+
+import java.nio.file.Path;
+
+import org.embulk.config.ConfigSource;
+import org.embulk.formatter.csv.CsvFormatterPlugin;
+import org.embulk.input.file.LocalFileInputPlugin;
+import org.embulk.output.file.LocalFileOutputPlugin;
+import org.embulk.parser.csv.CsvParserPlugin;
+import org.embulk.spi.FileInputPlugin;
+import org.embulk.spi.FileOutputPlugin;
+import org.embulk.spi.FormatterPlugin;
+import org.embulk.spi.InputPlugin;
+import org.embulk.spi.ParserPlugin;
+import org.embulk.test.EmbulkTests;
+import org.embulk.test.TestingEmbulk;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.embulk.input.postgresql.PostgreSQLTests.assertConfigException;
+import static org.embulk.input.postgresql.PostgreSQLTests.execute;
+import static org.embulk.test.EmbulkTests.readSortedFile;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class FetchModeTest
+{
+    private static final String BASIC_RESOURCE_PATH = "/org/embulk/input/postgresql/test/expect/fetch_mode/";
+
+    private static ConfigSource loadYamlResource(TestingEmbulk embulk, String fileName)
+    {
+        return embulk.loadYamlResource(BASIC_RESOURCE_PATH + fileName);
+    }
+
+    private static String readResource(String fileName)
+    {
+        return EmbulkTests.readResource(BASIC_RESOURCE_PATH + fileName);
+    }
+
+    @Rule
+    public TestingEmbulk embulk = TestingEmbulk.builder()
+        .registerPlugin(FileInputPlugin.class, "file", LocalFileInputPlugin.class)
+        .registerPlugin(ParserPlugin.class, "csv", CsvParserPlugin.class)
+        .registerPlugin(FormatterPlugin.class, "csv", CsvFormatterPlugin.class)
+        .registerPlugin(FileOutputPlugin.class, "file", LocalFileOutputPlugin.class)
+        .registerPlugin(InputPlugin.class, "postgresql", PostgreSQLInputPlugin.class)
+        .build();
+
+    private ConfigSource baseConfig;
+
+    @Before
+    public void setup()
+    {
+        baseConfig = PostgreSQLTests.baseConfig();
+        execute(readResource("setup.sql"));
+    }
+
+    @Test
+    public void testCursor() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "cursor.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testPrefetch() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "prefetch.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testPrefetchWithoutFetchRows() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "prefetch.yml")).set("fetch_rows", 0),
+                "fetch_rows must be greater than 0 if prefetch is true, but got 0");
+    }
+
+    @Test
+    public void testAsyncOutput() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "async_output.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testKeyset() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "keyset.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testKeysetWithQuery() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "keyset_query.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testKeysetWithRetry() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "keyset_retry.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testKeysetWithRetryAndSnapshot() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "keyset_retry.yml"))
+                .set("consistent_snapshot", "export"),
+                "consistent_snapshot can't be used with retry_limit option");
+    }
+
+    @Test
+    public void testKeysetWithOrderBy() throws Exception
+    {
+        // rows are read in the order of keyset_columns
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "keyset.yml")).set("order_by", "id DESC"),
+                "order_by option must not be set if keyset_pagination is true");
+    }
+
+    @Test
+    public void testKeysetWithIncremental() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "keyset.yml")).set("incremental", true),
+                "keyset_pagination can't be used if incremental is true");
+    }
+
+    @Test
+    public void testKeysetColumnsWithoutKeyset() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "keyset_query.yml")).set("keyset_pagination", false),
+                "'keyset_pagination: true' must be set if keyset_columns is set");
+    }
+
+    @Test
+    public void testKeysetQueryWithoutKeysetColumns() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "keyset_query.yml")).remove("keyset_columns"),
+                "keyset_columns option must be set if keyset_pagination is true and custom query option is set");
+    }
+
+    @Test
+    public void testCopy() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "copy.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testCopyText() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "copy.yml")).set("copy_format", "text"), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testCopyWithHashPartitions() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "copy_hash.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testCopyWithRangePartitions() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "copy_hash.yml")).set("partition_type", "range"),
+                "Partitions by ranges can't be used if fetch_mode is 'copy'. Use partition_type 'ctid' or 'hash' instead");
+    }
+
+    @Test
+    public void testAsyncOutputWithPartitionChunks() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "async_output.yml"))
+                .set("partition_by", "id").set("partition_count", 2).set("partition_chunks", 2), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testAsyncOutputWithFetchConnections() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "async_output.yml"))
+                .set("partition_by", "id").set("partition_count", 2).set("fetch_connections", 2), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+}
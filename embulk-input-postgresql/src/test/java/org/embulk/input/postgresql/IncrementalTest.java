@@ -247,4 +247,132 @@ public class IncrementalTest
                 result2.getConfigDiff(),
                 is((ConfigDiff) loadYamlResource(embulk, "query/multi_columns_expected_2.diff")));
     }
+
+    @Test
+    public void targets() throws Exception
+    {
+        // setup first rows
+        execute(readResource("targets/setup.sql"));
+
+        Path out1 = embulk.createTempFile("csv");
+        RunResult result1 = embulk.runInput(
+                baseConfig.merge(loadYamlResource(embulk, "targets/config_1.yml")),
+                out1);
+        assertThat(
+                readSortedFile(out1),
+                is(readResource("targets/expected_1.csv")));
+        assertThat(
+                result1.getConfigDiff(),
+                is((ConfigDiff) loadYamlResource(embulk, "targets/expected_1.diff")));
+
+        // insert more rows
+        execute(readResource("targets/insert_more.sql"));
+
+        Path out2 = embulk.createTempFile("csv");
+        RunResult result2 = embulk.runInput(
+                baseConfig.merge(loadYamlResource(embulk, "targets/config_2.yml")),
+                out2);
+        assertThat(
+                readSortedFile(out2),
+                is(readResource("targets/expected_2.csv")));
+        assertThat(
+                result2.getConfigDiff(),
+                is((ConfigDiff) loadYamlResource(embulk, "targets/expected_2.diff")));
+    }
+
+    @Test
+    public void partitions() throws Exception
+    {
+        // setup first rows
+        execute(readResource("partitions/setup.sql"));
+
+        Path out1 = embulk.createTempFile("csv");
+        RunResult result1 = embulk.runInput(
+                baseConfig.merge(loadYamlResource(embulk, "partitions/config_1.yml")),
+                out1);
+        assertThat(
+                readSortedFile(out1),
+                is(readResource("partitions/expected_1.csv")));
+        assertThat(
+                result1.getConfigDiff(),
+                is((ConfigDiff) loadYamlResource(embulk, "partitions/expected_1.diff")));
+
+        // insert more rows
+        execute(readResource("partitions/insert_more.sql"));
+
+        Path out2 = embulk.createTempFile("csv");
+        RunResult result2 = embulk.runInput(
+                baseConfig.merge(loadYamlResource(embulk, "partitions/config_2.yml")),
+                out2);
+        assertThat(
+                readSortedFile(out2),
+                is(readResource("partitions/expected_2.csv")));
+        assertThat(
+                result2.getConfigDiff(),
+                is((ConfigDiff) loadYamlResource(embulk, "partitions/expected_2.diff")));
+    }
+
+    @Test
+    public void partitionsWithHash() throws Exception
+    {
+        // setup first rows
+        execute(readResource("partitions/setup.sql"));
+
+        Path out1 = embulk.createTempFile("csv");
+        RunResult result1 = embulk.runInput(
+                baseConfig.merge(loadYamlResource(embulk, "partitions/config_1.yml")).set("partition_type", "hash"),
+                out1);
+        assertThat(
+                readSortedFile(out1),
+                is(readResource("partitions/expected_1.csv")));
+        assertThat(
+                result1.getConfigDiff(),
+                is((ConfigDiff) loadYamlResource(embulk, "partitions/expected_1.diff")));
+
+        // insert more rows
+        execute(readResource("partitions/insert_more.sql"));
+
+        Path out2 = embulk.createTempFile("csv");
+        RunResult result2 = embulk.runInput(
+                baseConfig.merge(loadYamlResource(embulk, "partitions/config_2.yml")).set("partition_type", "hash"),
+                out2);
+        assertThat(
+                readSortedFile(out2),
+                is(readResource("partitions/expected_2.csv")));
+        assertThat(
+                result2.getConfigDiff(),
+                is((ConfigDiff) loadYamlResource(embulk, "partitions/expected_2.diff")));
+    }
+
+    @Test
+    public void partitionsWithQuantile() throws Exception
+    {
+        // setup first rows
+        execute(readResource("partitions/setup.sql"));
+
+        Path out1 = embulk.createTempFile("csv");
+        RunResult result1 = embulk.runInput(
+                baseConfig.merge(loadYamlResource(embulk, "partitions/config_1.yml")).set("partition_type", "quantile"),
+                out1);
+        assertThat(
+                readSortedFile(out1),
+                is(readResource("partitions/expected_1.csv")));
+        assertThat(
+                result1.getConfigDiff(),
+                is((ConfigDiff) loadYamlResource(embulk, "partitions/expected_1.diff")));
+
+        // insert more rows
+        execute(readResource("partitions/insert_more.sql"));
+
+        Path out2 = embulk.createTempFile("csv");
+        RunResult result2 = embulk.runInput(
+                baseConfig.merge(loadYamlResource(embulk, "partitions/config_2.yml")).set("partition_type", "quantile"),
+                out2);
+        assertThat(
+                readSortedFile(out2),
+                is(readResource("partitions/expected_2.csv")));
+        assertThat(
+                result2.getConfigDiff(),
+                is((ConfigDiff) loadYamlResource(embulk, "partitions/expected_2.diff")));
+    }
 }
@@ -0,0 +1,181 @@
+package org.embulk.input.postgresql;
+
+import java.util.Arrays;
+
+import org.embulk.config.ConfigSource;
+import org.embulk.formatter.csv.CsvFormatterPlugin;
+import org.embulk.input.file.LocalFileInputPlugin;
+import org.embulk.input.jdbc.JdbcInputPlugin;
+import org.embulk.output.file.LocalFileOutputPlugin;
+import org.embulk.parser.csv.CsvParserPlugin;
+import org.embulk.spi.FileInputPlugin;
+import org.embulk.spi.FileOutputPlugin;
+import org.embulk.spi.FormatterPlugin;
+import org.embulk.spi.InputPlugin;
+import org.embulk.spi.ParserPlugin;
+import org.embulk.test.EmbulkTests;
+import org.embulk.test.TestingEmbulk;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.embulk.input.postgresql.PostgreSQLTests.assertConfigException;
+import static org.embulk.input.postgresql.PostgreSQLTests.execute;
+
+// Options of partitions that must be rejected before loading
+public class PartitionErrorTest
+{
+    private static final String BASIC_RESOURCE_PATH = "/org/embulk/input/postgresql/test/expect/partition/";
+
+    private static ConfigSource loadYamlResource(TestingEmbulk embulk, String fileName)
+    {
+        return embulk.loadYamlResource(BASIC_RESOURCE_PATH + fileName);
+    }
+
+    private static String readResource(String fileName)
+    {
+        return EmbulkTests.readResource(BASIC_RESOURCE_PATH + fileName);
+    }
+
+    @Rule
+    public TestingEmbulk embulk = TestingEmbulk.builder()
+        .registerPlugin(FileInputPlugin.class, "file", LocalFileInputPlugin.class)
+        .registerPlugin(ParserPlugin.class, "csv", CsvParserPlugin.class)
+        .registerPlugin(FormatterPlugin.class, "csv", CsvFormatterPlugin.class)
+        .registerPlugin(FileOutputPlugin.class, "file", LocalFileOutputPlugin.class)
+        .registerPlugin(InputPlugin.class, "postgresql", PostgreSQLInputPlugin.class)
+        .registerPlugin(InputPlugin.class, "jdbc", JdbcInputPlugin.class)
+        .build();
+
+    private ConfigSource baseConfig;
+
+    @Before
+    public void setup()
+    {
+        baseConfig = PostgreSQLTests.baseConfig();
+        execute(readResource("setup.sql"));
+    }
+
+    @Test
+    public void testHashWithGenericPlugin() throws Exception
+    {
+        // the generic plugin doesn't know the hash function of the database
+        ConfigSource config = embulk.newConfig()
+            .set("type", "jdbc")
+            .set("driver_class", "org.postgresql.Driver")
+            .set("url", "jdbc:postgresql://" + baseConfig.get(String.class, "host") + "/" + baseConfig.get(String.class, "database"))
+            .set("user", baseConfig.get(String.class, "user"))
+            .set("password", baseConfig.get(String.class, "password"))
+            .merge(loadYamlResource(embulk, "hash.yml"));
+        assertConfigException(embulk, config, "partition_type 'hash' is not supported by this database");
+    }
+
+    @Test
+    public void testRangeWithTextColumn() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "range.yml")).set("partition_by", "note"),
+                "Column 'note' set at partition_by option must be an integer type but got text");
+    }
+
+    @Test
+    public void testTimeWithIntegerColumn() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "range.yml")).set("partition_type", "time"),
+                "Column 'num' set at partition_by option must be a timestamp type if partition_type is 'time' but got int4");
+    }
+
+    @Test
+    public void testIntervalWithRange() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "range.yml")).set("partition_interval", "day"),
+                "partition_interval option must not be set unless partition_type is 'time' or 'auto'");
+    }
+
+    @Test
+    public void testPartitionsWithPartitionBy() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "conditions.yml")).set("partition_by", "num"),
+                "partition_by and partition_type options must not be set if partitions option is set");
+    }
+
+    @Test
+    public void testNativeWithPartitionBy() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "native.yml")).set("partition_by", "num"),
+                "partition_by option must not be set if partition_type is 'native'");
+    }
+
+    @Test
+    public void testNativeWithIncremental() throws Exception
+    {
+        // last records can't be compared between the physical partitions
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "native.yml"))
+                .set("incremental", true).set("incremental_columns", Arrays.asList("num")),
+                "partition_type 'native' can't be used if incremental is true");
+    }
+
+    @Test
+    public void testCtidWithPartitionBy() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "ctid.yml")).set("partition_by", "num"),
+                "partition_by option must not be set if partition_type is 'ctid'");
+    }
+
+    @Test
+    public void testAutoWithQuery() throws Exception
+    {
+        // indexes are looked up by the table
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "range_query.yml")).set("partition_type", "auto"),
+                "table option is required if partition_type is 'auto'");
+    }
+
+    @Test
+    public void testAutoWithoutRowsPerTask() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "auto.yml")).set("partition_rows_per_task", 0),
+                "partition_rows_per_task must be greater than 0");
+    }
+
+    @Test
+    public void testQuantileWithIncrementalAndFetchConnections() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "quantile.yml"))
+                .set("incremental", true).set("incremental_columns", Arrays.asList("num")).set("fetch_connections", 2),
+                "fetch_connections, partition_chunks and partition_split_timeout options can't be used if incremental is true");
+    }
+
+    @Test
+    public void testIncrementalWithCharColumn() throws Exception
+    {
+        // last records of the partitions are compared in Java, which doesn't know the collation
+        execute(EmbulkTests.readResource("/org/embulk/input/postgresql/test/expect/incremental/char/setup.sql"));
+        assertConfigException(embulk,
+                baseConfig.merge(embulk.loadYamlResource("/org/embulk/input/postgresql/test/expect/incremental/char/config_1.yml"))
+                        .set("partition_by", "name").set("partition_type", "hash").set("partition_count", 2),
+                "incremental_columns must be numbers or timestamps if partition_by, partition_type or partitions option is set, but column 'name' is 'bpchar'");
+    }
+
+    @Test
+    public void testSplitTimeoutWithoutPrimaryKey() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "split_timeout.yml"))
+                .set("table", "partition_load").remove("where"),
+                "partition_split_timeout option requires the column set at partition_by option to be the primary key of the table 'partition_load'");
+    }
+
+    @Test
+    public void testSplitTimeoutWithHash() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "hash.yml")).set("partition_split_timeout", 1),
+                "partition_split_timeout option requires partition_type 'range' or 'quantile'");
+    }
+
+    @Test
+    public void testSnapshotWithConnectionLimit() throws Exception
+    {
+        // the coordinator holds the only connection of connection_limit
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "range.yml"))
+                .set("consistent_snapshot", "export").set("connection_limit", 1),
+                "consistent_snapshot requires connection_limit to be at least 2, but got 1");
+    }
+}
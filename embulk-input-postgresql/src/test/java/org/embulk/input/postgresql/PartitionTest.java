@@ -0,0 +1,289 @@
+package org.embulk.input.postgresql;
+
+import java.nio.file.Path;
+
+import org.embulk.config.ConfigSource;
+import org.embulk.formatter.csv.CsvFormatterPlugin;
+import org.embulk.input.file.LocalFileInputPlugin;
+import org.embulk.output.file.LocalFileOutputPlugin;
+import org.embulk.parser.csv.CsvParserPlugin;
+import org.embulk.spi.FileInputPlugin;
+import org.embulk.spi.FileOutputPlugin;
+import org.embulk.spi.FormatterPlugin;
+import org.embulk.spi.InputPlugin;
+import org.embulk.spi.ParserPlugin;
+import org.embulk.test.EmbulkTests;
+import org.embulk.test.TestingEmbulk;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.embulk.input.postgresql.PostgreSQLTests.execute;
+import static org.embulk.input.postgresql.PostgreSQLTests.selectValue;
+import static org.embulk.test.EmbulkTests.readSortedFile;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PartitionTest
+{
+    private static final String BASIC_RESOURCE_PATH = "/org/embulk/input/postgresql/test/expect/partition/";
+
+    // log_partition_read() records the rows read by the tasks to partition_read_log
+    private static final String LOG_READ = "log_partition_read()";
+
+    private static ConfigSource loadYamlResource(TestingEmbulk embulk, String fileName)
+    {
+        return embulk.loadYamlResource(BASIC_RESOURCE_PATH + fileName);
+    }
+
+    private static String readResource(String fileName)
+    {
+        return EmbulkTests.readResource(BASIC_RESOURCE_PATH + fileName);
+    }
+
+    @Rule
+    public TestingEmbulk embulk = TestingEmbulk.builder()
+        .registerPlugin(FileInputPlugin.class, "file", LocalFileInputPlugin.class)
+        .registerPlugin(ParserPlugin.class, "csv", CsvParserPlugin.class)
+        .registerPlugin(FormatterPlugin.class, "csv", CsvFormatterPlugin.class)
+        .registerPlugin(FileOutputPlugin.class, "file", LocalFileOutputPlugin.class)
+        .registerPlugin(InputPlugin.class, "postgresql", PostgreSQLInputPlugin.class)
+        .build();
+
+    private ConfigSource baseConfig;
+
+    @Before
+    public void setup()
+    {
+        baseConfig = PostgreSQLTests.baseConfig();
+        execute(readResource("setup.sql"));
+    }
+
+    @Test
+    public void testRange() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "range.yml"))
+                .set("where", LOG_READ), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+        assertThat(countQueries(), is(3));
+        assertThat(countConnections(), is(3));
+    }
+
+    @Test
+    public void testRangeWithFetchConnections() throws Exception
+    {
+        // a task reads 2 partitions by 2 connections at the same time
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "range.yml"))
+                .set("where", LOG_READ).set("partition_count", 1).set("fetch_connections", 2), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+        assertThat(countQueries(), is(2));
+        assertThat(countConnections(), is(2));
+        assertThat(maxActiveQueries(), is(2));
+    }
+
+    @Test
+    public void testRangeWithPartitionChunks() throws Exception
+    {
+        // 2 tasks read 4 chunks. Each task reads its chunks one by one with a connection
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "range.yml"))
+                .set("where", LOG_READ).set("partition_count", 2).set("partition_chunks", 2), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+        assertThat(countQueries(), is(4));
+        assertThat(countConnections(), is(2));
+    }
+
+    @Test
+    public void testRangeWithAsyncOutputPages() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "range.yml"))
+                .set("where", LOG_READ).set("async_output_pages", 4), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+        assertThat(countQueries(), is(3));
+    }
+
+    @Test
+    public void testRangeWithQuery() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "range_query.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected_query.csv")));
+    }
+
+    @Test
+    public void testHash() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "hash.yml"))
+                .set("where", LOG_READ), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+        assertThat(countQueries(), is(3));
+    }
+
+    @Test
+    public void testTime() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "time.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected_time.csv")));
+    }
+
+    @Test
+    public void testTimeWithTimeZone() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "time_tz.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected_time.csv")));
+    }
+
+    @Test
+    public void testConditions() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "conditions.yml"))
+                .set("where", LOG_READ), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected_conditions.csv")));
+        assertThat(countQueries(), is(3));
+    }
+
+    @Test
+    public void testNative() throws Exception
+    {
+        // the default partition has the row of null
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "native.yml"))
+                .set("where", LOG_READ), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+        assertThat(countQueries(), is(4));
+    }
+
+    @Test
+    public void testCtid() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "ctid.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testQuantile() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "quantile.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testQuantileWithQuery() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "quantile_query.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected_query.csv")));
+    }
+
+    @Test
+    public void testQuantileBySample() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "quantile_sample.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testAuto() throws Exception
+    {
+        // 11 rows are split into 3 tasks
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "auto.yml"))
+                .set("where", LOG_READ), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+        assertThat(countQueries(), is(3));
+        assertThat(countConnections(), is(3));
+    }
+
+    @Test
+    public void testAutoWithFetchConnections() throws Exception
+    {
+        // each of 3 tasks reads 2 partitions by 2 connections
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "auto.yml"))
+                .set("where", LOG_READ).set("fetch_connections", 2), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+        assertThat(countQueries(), is(6));
+        assertThat(countConnections(), is(6));
+    }
+
+    @Test
+    public void testAutoWithPartitionChunks() throws Exception
+    {
+        // each of 3 tasks reads 2 chunks by a connection
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "auto.yml"))
+                .set("where", LOG_READ).set("partition_chunks", 2), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+        assertThat(countQueries(), is(6));
+        assertThat(countConnections(), is(3));
+    }
+
+    @Test
+    public void testConsistentSnapshot() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "snapshot.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testConsistentSnapshotWithStatementTimeout() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "snapshot_statement_timeout.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testSplitTimeout() throws Exception
+    {
+        // each row takes 0.2 seconds. So, the ranges are split until they are read within a second.
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "split_timeout.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected_split.csv")));
+        // the rows that the cancelled queries read are read again after the range is split
+        assertThat(countReadRows(), is(greaterThan(10)));
+    }
+
+    @Test
+    public void testSplitTimeoutWithSnapshot() throws Exception
+    {
+        // a new connection imports the snapshot again after the query of a range is cancelled
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "split_timeout.yml"))
+                .set("consistent_snapshot", "export"), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected_split.csv")));
+        assertThat(countReadRows(), is(greaterThan(10)));
+    }
+
+    private static int countQueries()
+    {
+        return Integer.parseInt(selectValue("SELECT count(DISTINCT (pid, query_start)) FROM partition_read_log"));
+    }
+
+    private static int countConnections()
+    {
+        return Integer.parseInt(selectValue("SELECT count(DISTINCT pid) FROM partition_read_log"));
+    }
+
+    private static int maxActiveQueries()
+    {
+        return Integer.parseInt(selectValue("SELECT max(active_queries) FROM partition_read_log"));
+    }
+
+    private static int countReadRows()
+    {
+        return Integer.parseInt(selectValue("SELECT last_value FROM partition_read_rows"));
+    }
+}
@@ -3,9 +3,19 @@ package org.embulk.input.postgresql;
 import org.embulk.test.EmbulkTests;
 import com.google.common.base.Throwables;
 import com.google.common.io.ByteStreams;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
+import org.embulk.test.TestingEmbulk;
 import static java.util.Locale.ENGLISH;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class PostgreSQLTests
 {
@@ -14,7 +24,38 @@ public class PostgreSQLTests
         return EmbulkTests.config("EMBULK_INPUT_POSTGRESQL_TEST_CONFIG");
     }
 
+    // Runs the input and asserts that it fails by ConfigException with the message
+    public static void assertConfigException(TestingEmbulk embulk, ConfigSource config, String message) throws Exception
+    {
+        Path out = embulk.createTempFile("csv");
+        try {
+            embulk.runInput(config, out);
+        } catch (Exception ex) {
+            for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+                if (cause instanceof ConfigException) {
+                    assertThat(cause.getMessage(), is(message));
+                    return;
+                }
+            }
+            throw ex;
+        }
+        fail("ConfigException was not thrown");
+    }
+
     public static void execute(String sql)
+    {
+        psql(sql, System.out);
+    }
+
+    // Returns the value of the first column of the first row
+    public static String selectValue(String sql)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        psql(sql, out, "--tuples-only", "--no-align");
+        return new String(out.toByteArray(), StandardCharsets.UTF_8).trim();
+    }
+
+    private static void psql(String sql, OutputStream out, String... options)
     {
         ConfigSource config = baseConfig();
         ProcessBuilder pb = new ProcessBuilder(
@@ -24,12 +65,13 @@ public class PostgreSQLTests
                 "--username", config.get(String.class, "user"),
                 "--dbname", config.get(String.class, "database"),
                 "-c", convert(sql));
+        pb.command().addAll(Arrays.asList(options));
         pb.environment().put("PGPASSWORD", config.get(String.class, "password"));
         pb.redirectErrorStream(true);
         int code;
         try {
             Process process = pb.start();
-            ByteStreams.copy(process.getInputStream(), System.out);
+            ByteStreams.copy(process.getInputStream(), out);
             code = process.waitFor();
         } catch (IOException | InterruptedException ex) {
             throw Throwables.propagate(ex);
@@ -0,0 +1,106 @@
+package org.embulk.input.postgresql;
+
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.embulk.config.ConfigSource;
+import org.embulk.formatter.csv.CsvFormatterPlugin;
+import org.embulk.input.file.LocalFileInputPlugin;
+import org.embulk.input.jdbc.JdbcInputPlugin;
+import org.embulk.output.file.LocalFileOutputPlugin;
+import org.embulk.parser.csv.CsvParserPlugin;
+import org.embulk.spi.FileInputPlugin;
+import org.embulk.spi.FileOutputPlugin;
+import org.embulk.spi.FormatterPlugin;
+import org.embulk.spi.InputPlugin;
+import org.embulk.spi.ParserPlugin;
+import org.embulk.test.EmbulkTests;
+import org.embulk.test.TestingEmbulk;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.embulk.input.postgresql.PostgreSQLTests.assertConfigException;
+import static org.embulk.input.postgresql.PostgreSQLTests.execute;
+import static org.embulk.test.EmbulkTests.readSortedFile;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ReplicaTest
+{
+    private static final String BASIC_RESOURCE_PATH = "/org/embulk/input/postgresql/test/expect/replica/";
+
+    private static ConfigSource loadYamlResource(TestingEmbulk embulk, String fileName)
+    {
+        return embulk.loadYamlResource(BASIC_RESOURCE_PATH + fileName);
+    }
+
+    private static String readResource(String fileName)
+    {
+        return EmbulkTests.readResource(BASIC_RESOURCE_PATH + fileName);
+    }
+
+    @Rule
+    public TestingEmbulk embulk = TestingEmbulk.builder()
+        .registerPlugin(FileInputPlugin.class, "file", LocalFileInputPlugin.class)
+        .registerPlugin(ParserPlugin.class, "csv", CsvParserPlugin.class)
+        .registerPlugin(FormatterPlugin.class, "csv", CsvFormatterPlugin.class)
+        .registerPlugin(FileOutputPlugin.class, "file", LocalFileOutputPlugin.class)
+        .registerPlugin(InputPlugin.class, "postgresql", PostgreSQLInputPlugin.class)
+        .registerPlugin(InputPlugin.class, "jdbc", JdbcInputPlugin.class)
+        .build();
+
+    private ConfigSource baseConfig;
+
+    @Before
+    public void setup()
+    {
+        baseConfig = PostgreSQLTests.baseConfig();
+        execute(readResource("setup.sql"));
+    }
+
+    @Test
+    public void testReplicas() throws Exception
+    {
+        // the primary itself is used as the replica
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "replicas.yml"))
+                .set("replicas", Collections.singletonList(Collections.singletonMap("host", baseConfig.get(String.class, "host")))), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testReplicaMaxLagWithoutReplicas() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "replicas.yml")).set("replica_max_lag", 10),
+                "replica_max_lag option requires replicas option");
+    }
+
+    @Test
+    public void testReplicasWithGenericPlugin() throws Exception
+    {
+        // the generic plugin can't build the URL of a replica from its host
+        assertConfigException(embulk, newGenericConfig()
+                .set("replicas", Collections.singletonList(Collections.singletonMap("host", baseConfig.get(String.class, "host")))),
+                "replicas option is not supported by this plugin");
+    }
+
+    @Test
+    public void testTargetsWithGenericPlugin() throws Exception
+    {
+        assertConfigException(embulk, newGenericConfig()
+                .set("targets", Collections.singletonList(Collections.singletonMap("host", baseConfig.get(String.class, "host")))),
+                "targets option is not supported by this plugin");
+    }
+
+    private ConfigSource newGenericConfig()
+    {
+        return embulk.newConfig()
+            .set("type", "jdbc")
+            .set("driver_class", "org.postgresql.Driver")
+            .set("url", "jdbc:postgresql://" + baseConfig.get(String.class, "host") + "/" + baseConfig.get(String.class, "database"))
+            .set("user", baseConfig.get(String.class, "user"))
+            .set("password", baseConfig.get(String.class, "password"))
+            .merge(loadYamlResource(embulk, "replicas.yml"));
+    }
+}
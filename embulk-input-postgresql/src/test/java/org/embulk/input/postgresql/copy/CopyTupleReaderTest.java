@@ -0,0 +1,190 @@
+package org.embulk.input.postgresql.copy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.msgpack.value.Value;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CopyTupleReaderTest
+{
+    // COPY (SELECT id, name, price, flag, created_at, doc, uid FROM t) TO STDOUT (FORMAT binary)
+    // of columns int4, text, numeric, bool, timestamptz, jsonb and uuid
+    private static final String BINARY_COPY =
+        "5047434f50590aff0d0a00" + "00000000" + "00000000"
+        // 1, 'foo', 12.345, true, '2000-01-01 00:00:01+00', '{"a":1}', '00000000-0000-0000-0000-000000000001'
+        + "0007"
+        + "00000004" + "00000001"
+        + "00000003" + "666f6f"
+        + "0000000c" + "0002" + "0000" + "0000" + "0003" + "000c" + "0d7a"
+        + "00000001" + "01"
+        + "00000008" + "00000000000f4240"
+        + "00000008" + "01" + "7b2261223a317d"
+        + "00000010" + "00000000000000000000000000000001"
+        // 2, NULL, NULL, NULL, NULL, NULL, NULL
+        + "0007"
+        + "00000004" + "00000002"
+        + "ffffffff" + "ffffffff" + "ffffffff" + "ffffffff" + "ffffffff" + "ffffffff"
+        + "ffff";
+
+    private static final String TEXT_COPY =
+        "1\tfoo\t12.345\tt\t2000-01-01 09:00:01+09\t{\"a\":1}\t00000000-0000-0000-0000-000000000001\n"
+        + "2\t\\N\t\\N\t\\N\t\\N\t\\N\t\\N\n";
+
+    private static final List<String> TYPES = Arrays.asList("int4", "text", "numeric", "bool", "timestamptz", "jsonb", "uuid");
+
+    @Test
+    public void testBinary() throws IOException
+    {
+        List<List<Object>> tuples = readAll(hex(BINARY_COPY), true, TYPES);
+        assertThat(tuples.size(), is(2));
+        assertThat(tuples.get(0), is(Arrays.<Object>asList(1L, "foo", 12.345, true,
+                        Instant.parse("2000-01-01T00:00:01Z"), "{\"a\":1}", "00000000-0000-0000-0000-000000000001")));
+        assertThat(tuples.get(1), is(Arrays.<Object>asList(2L, null, null, null, null, null, null)));
+    }
+
+    @Test
+    public void testText() throws IOException
+    {
+        List<List<Object>> tuples = readAll(TEXT_COPY.getBytes(StandardCharsets.UTF_8), false, TYPES);
+        assertThat(tuples.size(), is(2));
+        assertThat(tuples.get(0), is(Arrays.<Object>asList(1L, "foo", 12.345, true,
+                        Instant.parse("2000-01-01T00:00:01Z"), "{\"a\":1}", "00000000-0000-0000-0000-000000000001")));
+        assertThat(tuples.get(1), is(Arrays.<Object>asList(2L, null, null, null, null, null, null)));
+    }
+
+    @Test
+    public void testTextEscapes() throws IOException
+    {
+        List<List<Object>> tuples = readAll("a\\tb\\\\c\\nd\\101\\x42\n".getBytes(StandardCharsets.UTF_8), false, Arrays.asList("text"));
+        assertThat(tuples.get(0), is(Arrays.<Object>asList("a\tb\\c\ndAB")));
+    }
+
+    @Test
+    public void testBinaryNumeric() throws IOException
+    {
+        // -0.0001, 100000000 and NaN
+        List<List<Object>> tuples = readAll(hex("5047434f50590aff0d0a00" + "00000000" + "00000000"
+                    + "0001" + "0000000a" + "0001" + "ffff" + "4000" + "0004" + "0001"
+                    + "0001" + "0000000a" + "0001" + "0002" + "0000" + "0000" + "0001"
+                    + "0001" + "00000008" + "0000" + "0000" + "c000" + "0000"
+                    + "ffff"), true, Arrays.asList("numeric"));
+        assertThat(tuples.get(0).get(0), is((Object) (-0.0001)));
+        assertThat(tuples.get(1).get(0), is((Object) 100000000.0));
+        assertThat(tuples.get(2).get(0), is((Object) Double.NaN));
+    }
+
+    @Test
+    public void testBinaryDateTimes() throws IOException
+    {
+        // '2000-01-02'::date, '2000-01-01 00:00:01'::timestamp, 'infinity'::timestamp
+        List<List<Object>> tuples = readAll(hex("5047434f50590aff0d0a00" + "00000000" + "00000000"
+                    + "0002" + "00000004" + "00000001" + "00000008" + "00000000000f4240"
+                    + "0002" + "ffffffff" + "00000008" + "7fffffffffffffff"
+                    + "ffff"), true, Arrays.asList("date", "timestamp"));
+        assertThat(tuples.get(0).get(0), is((Object) LocalDateTime.parse("2000-01-02T00:00:00").atZone(ZoneId.systemDefault()).toInstant()));
+        assertThat(tuples.get(0).get(1), is((Object) LocalDateTime.parse("2000-01-01T00:00:01").atZone(ZoneId.systemDefault()).toInstant()));
+        assertThat(tuples.get(1).get(1), is((Object) CopyValueDecoder.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void testTextDateTimes() throws IOException
+    {
+        List<List<Object>> tuples = readAll(("2000-01-01 00:00:01.5-05:30\t2000-01-01 00:00:01.123456\n"
+                    + "-infinity\t0001-01-01 00:00:00 BC\n").getBytes(StandardCharsets.UTF_8),
+                false, Arrays.asList("timestamptz", "timestamp"));
+        assertThat(tuples.get(0).get(0), is((Object) Instant.parse("2000-01-01T05:30:01.5Z")));
+        assertThat(tuples.get(0).get(1), is((Object) LocalDateTime.parse("2000-01-01T00:00:01.123456").atZone(ZoneId.systemDefault()).toInstant()));
+        assertThat(tuples.get(1).get(0), is((Object) CopyValueDecoder.NEGATIVE_INFINITY));
+        assertThat(tuples.get(1).get(1), is((Object) LocalDateTime.parse("0000-01-01T00:00:00").atZone(ZoneId.systemDefault()).toInstant()));
+    }
+
+    private static List<List<Object>> readAll(byte[] data, boolean binary, List<String> typeNames) throws IOException
+    {
+        List<CopyValueDecoder> decoders = new ArrayList<>();
+        for (String typeName : typeNames) {
+            decoders.add(CopyValueDecoder.of(typeName).get());
+        }
+        CopyTupleReader reader = new CopyTupleReader(new ByteArrayInputStream(data), binary, decoders);
+        List<List<Object>> tuples = new ArrayList<>();
+        while (true) {
+            RecordingSink sink = new RecordingSink(typeNames.size());
+            if (!reader.readTuple(sink)) {
+                return tuples;
+            }
+            tuples.add(sink.values);
+        }
+    }
+
+    private static byte[] hex(String text)
+    {
+        byte[] bytes = new byte[text.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(text.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static class RecordingSink
+            implements CopyRecordSink
+    {
+        private final List<Object> values;
+
+        public RecordingSink(int size)
+        {
+            this.values = new ArrayList<>(Arrays.asList(new Object[size]));
+        }
+
+        @Override
+        public void setNull(int index)
+        {
+            values.set(index, null);
+        }
+
+        @Override
+        public void setBoolean(int index, boolean value)
+        {
+            values.set(index, value);
+        }
+
+        @Override
+        public void setLong(int index, long value)
+        {
+            values.set(index, value);
+        }
+
+        @Override
+        public void setDouble(int index, double value)
+        {
+            values.set(index, value);
+        }
+
+        @Override
+        public void setString(int index, String value)
+        {
+            values.set(index, value);
+        }
+
+        @Override
+        public void setJson(int index, Value value)
+        {
+            values.set(index, value.toJson());
+        }
+
+        @Override
+        public void setTimestamp(int index, Instant value)
+        {
+            values.set(index, value);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+drop table if exists input_fetch_mode;
+
+create table input_fetch_mode (
+    id int4 primary key,
+    name text,
+    price numeric(10, 3),
+    flag boolean,
+    created_at timestamptz
+);
+
+insert into input_fetch_mode (id, name, price, flag, created_at) values
+(1, 'a', 1.5, true, '2016-11-01 10:00:00+00'),
+(2, 'b', -0.25, false, '2016-11-02 12:34:56.123456+00'),
+(3, 'c', 100, true, '2016-11-03 00:00:00+09'),
+(4, null, null, null, null),
+(5, 'e', 0.001, false, '2016-11-05 00:00:00+00')
+;
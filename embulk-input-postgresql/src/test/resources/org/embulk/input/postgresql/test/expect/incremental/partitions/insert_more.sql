@@ -0,0 +1,7 @@
+
+insert into partitioned_load (num, note) values
+(0, 'more_skip'),
+(6, 'more_skip'),
+(7, 'more_load'),
+(12, 'more_load'),
+(9, 'more_load');
@@ -0,0 +1,14 @@
+drop table if exists partitioned_load;
+
+create table partitioned_load (
+    num int not null,
+    note text
+);
+
+insert into partitioned_load (num, note) values
+(3, 'first'),
+(6, 'first'),
+(2, 'first'),
+(5, 'first'),
+(1, 'first'),
+(4, 'first');
@@ -0,0 +1,9 @@
+
+insert into target_a.target_load (num, note) values
+(1, 'more_skip_a'),
+(3, 'more_load_a');
+
+insert into target_b.target_load (num, note) values
+(2, 'more_skip_b'),
+(13, 'more_load_b');
+
@@ -0,0 +1,23 @@
+drop schema if exists target_a cascade;
+drop schema if exists target_b cascade;
+create schema target_a;
+create schema target_b;
+
+create table target_a.target_load (
+    num int not null,
+    note text
+);
+
+create table target_b.target_load (
+    num int not null,
+    note text
+);
+
+insert into target_a.target_load (num, note) values
+(2, 'first_a'),
+(1, 'first_a');
+
+insert into target_b.target_load (num, note) values
+(11, 'first_b'),
+(12, 'first_b'),
+(10, 'first_b');
@@ -0,0 +1,112 @@
+drop table if exists partition_load;
+
+create table partition_load (
+    num int,
+    note text
+);
+
+insert into partition_load (num, note) values
+(1, 'a'),
+(2, 'b'),
+(3, 'c'),
+(4, 'd'),
+(5, 'e'),
+(6, 'f'),
+(7, 'g'),
+(8, 'h'),
+(9, 'i'),
+(10, 'j'),
+(null, 'null');
+
+create index partition_load_num on partition_load (num);
+
+analyze partition_load;
+
+drop table if exists partition_time_load;
+
+create table partition_time_load (
+    time timestamp(6),
+    time_tz timestamptz(6),
+    note text
+);
+
+insert into partition_time_load (time, time_tz, note) values
+('2016-11-01 10:00:00', '2016-11-01 10:00:00+0000', 'a'),
+('2016-11-01 23:59:59.999999', '2016-11-01 23:59:59.999999+0000', 'b'),
+('2016-11-02 00:00:00', '2016-11-02 00:00:00+0000', 'c'),
+('2016-11-02 12:34:56.123456', '2016-11-02 12:34:56.123456+0000', 'd'),
+('2016-11-03 00:00:00', '2016-11-03 00:00:00+0000', 'e'),
+('2016-11-03 08:00:00', '2016-11-03 08:00:00+0000', 'f'),
+(null, null, 'null');
+
+drop table if exists partition_native_load;
+
+create table partition_native_load (
+    num int,
+    note text
+) partition by range (num);
+
+create table partition_native_load_1 partition of partition_native_load for values from (minvalue) to (4);
+create table partition_native_load_2 partition of partition_native_load for values from (4) to (8);
+create table partition_native_load_3 partition of partition_native_load for values from (8) to (maxvalue);
+create table partition_native_load_4 partition of partition_native_load default;
+
+insert into partition_native_load (num, note) select num, note from partition_load;
+
+drop table if exists partition_split_load;
+
+create table partition_split_load (
+    num int primary key,
+    note text
+);
+
+insert into partition_split_load (num, note) select num, note from partition_load where num is not null;
+
+analyze partition_split_load;
+
+drop table if exists partition_sample_load;
+
+create table partition_sample_load as select * from partition_load;
+
+-- the number of rows is estimated but the column has no histogram
+alter table partition_sample_load alter column num set statistics 0;
+
+analyze partition_sample_load;
+
+drop table if exists partition_read_log;
+
+create table partition_read_log (
+    pid int,
+    query_start timestamptz,
+    active_queries bigint
+);
+
+-- set at where option to record the connection and the query that read each row, and the
+-- number of the queries reading rows at that time. The probes of the ranges are not recorded.
+create or replace function log_partition_read() returns boolean as $$
+begin
+    if current_query() not like '%MIN(%' then
+        perform pg_sleep(0.1);
+        perform pg_stat_clear_snapshot();
+        insert into partition_read_log (pid, query_start, active_queries)
+        select pg_backend_pid(), statement_timestamp(), count(*) from pg_stat_activity
+        where state = 'active' and query like '%log_partition_read()%';
+    end if;
+    return true;
+end;
+$$ language plpgsql;
+
+drop sequence if exists partition_read_rows;
+
+create sequence partition_read_rows;
+
+-- each row takes 0.2 seconds. The rows read by cancelled queries are also counted.
+create or replace function read_slowly() returns boolean as $$
+begin
+    if current_query() not like '%MIN(%' then
+        perform pg_sleep(0.2);
+        perform nextval('partition_read_rows');
+    end if;
+    return true;
+end;
+$$ language plpgsql;
@@ -0,0 +1,13 @@
+drop table if exists input_replica;
+
+create table input_replica (
+    id int4 primary key,
+    name text
+);
+
+insert into input_replica (id, name) values
+(1, 'a'),
+(2, 'b'),
+(3, 'c'),
+(4, 'd')
+;
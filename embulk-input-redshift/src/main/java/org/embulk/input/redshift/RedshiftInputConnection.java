@@ -0,0 +1,119 @@
+package org.embulk.input.redshift;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+import org.embulk.config.ConfigException;
+import org.embulk.input.postgresql.PostgreSQLInputConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class RedshiftInputConnection
+        extends PostgreSQLInputConnection
+{
+    private static final Logger logger = LoggerFactory.getLogger(RedshiftInputConnection.class);
+
+    public RedshiftInputConnection(Connection connection, String schemaName, Optional<Integer> statementTimeoutMillis)
+            throws SQLException
+    {
+        super(connection, schemaName, statementTimeoutMillis);
+    }
+
+    @Override
+    public String buildHashPartitionCondition(String columnName,
+            int partitionCount, int partitionIndex) throws SQLException
+    {
+        // Redshift doesn't have hashtext. FNV_HASH returns a signed bigint, so the remainder is
+        // shifted to be non-negative instead of using ABS that overflows at the minimum value.
+        return String.format(Locale.ENGLISH, "MOD(MOD(FNV_HASH(%s), %d) + %d, %d) = %d",
+                quoteIdentifierString(columnName), partitionCount, partitionCount, partitionCount, partitionIndex);
+    }
+
+    @Override
+    public List<String> getTablePartitions(String tableName) throws SQLException
+    {
+        // Redshift doesn't support table partitioning nor table inheritance
+        throw new ConfigException("partition_type 'native' is not supported by Redshift");
+    }
+
+    @Override
+    public Optional<Long> getReplicationLagSeconds() throws SQLException
+    {
+        throw new ConfigException("replica_max_lag is not supported by Redshift");
+    }
+
+    @Override
+    public List<Long> estimatePartitionBounds(String tableName, String columnName,
+            int partitionCount) throws SQLException
+    {
+        // pg_stats isn't available
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Optional<String> buildQuantileSampleQuery(String tableName, Optional<String> whereCondition,
+            String columnName, int partitionCount, double samplePercent) throws SQLException
+    {
+        // TABLESAMPLE isn't supported. The partitions are split by the range of the values.
+        return Optional.empty();
+    }
+
+    // Returns diststyle of SVV_TABLE_INFO such as "EVEN", "KEY(id)" or "ALL".
+    // SVV_TABLE_INFO doesn't include empty tables.
+    public Optional<String> getDistStyle(String tableName) throws SQLException
+    {
+        String sql = "SELECT diststyle FROM svv_table_info"
+            + " WHERE \"table\" = ? AND \"schema\" = " + (schemaName != null ? "?" : "current_schema()");
+        logger.info("SQL: " + sql);
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, tableName);
+            if (schemaName != null) {
+                stmt.setString(2, schemaName);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return Optional.empty();
+                }
+                return Optional.ofNullable(rs.getString(1));
+            }
+        }
+    }
+
+    public int getSliceCount() throws SQLException
+    {
+        String sql = "SELECT COUNT(*) FROM stv_slices";
+        logger.info("SQL: " + sql);
+        try (PreparedStatement stmt = connection.prepareStatement(sql);
+                ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Override
+    public Optional<Long> estimateRowCount(String tableName) throws SQLException
+    {
+        String sql = "SELECT estimated_visible_rows FROM svv_table_info"
+            + " WHERE \"table\" = ? AND \"schema\" = " + (schemaName != null ? "?" : "current_schema()");
+        logger.info("SQL: " + sql);
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, tableName);
+            if (schemaName != null) {
+                stmt.setString(2, schemaName);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return Optional.empty();
+                }
+                long rows = rs.getLong(1);
+                return rs.wasNull() ? Optional.<Long>empty() : Optional.of(rows);
+            }
+        }
+    }
+}
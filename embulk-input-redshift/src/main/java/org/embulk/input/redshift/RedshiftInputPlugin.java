@@ -1,5 +1,9 @@
 package org.embulk.input.redshift;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.Properties;
 import java.sql.Connection;
@@ -7,17 +11,27 @@ import java.sql.Driver;
 import java.sql.SQLException;
 import java.time.ZoneId;
 
+import org.embulk.config.ConfigException;
 import org.embulk.input.jdbc.AbstractJdbcInputPlugin;
+import org.embulk.input.jdbc.JdbcConnectionLimiter;
+import org.embulk.input.jdbc.JdbcInputConnection;
+import org.embulk.input.jdbc.JdbcLiteral;
+import org.embulk.input.jdbc.JdbcPartition;
+import org.embulk.input.jdbc.JdbcSchema;
+import org.embulk.input.jdbc.JdbcTarget;
 import org.embulk.input.jdbc.getter.ColumnGetterFactory;
-import org.embulk.input.postgresql.PostgreSQLInputConnection;
 import org.embulk.input.redshift.getter.RedshiftColumnGetterFactory;
 import org.embulk.spi.PageBuilder;
 import org.embulk.util.config.Config;
 import org.embulk.util.config.ConfigDefault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class RedshiftInputPlugin
         extends AbstractJdbcInputPlugin
 {
+    private static final Logger logger = LoggerFactory.getLogger(RedshiftInputPlugin.class);
+
     private static final Driver driver = new org.postgresql.Driver();
 
     public interface RedshiftPluginTask
@@ -60,12 +74,31 @@ public class RedshiftInputPlugin
     }
 
     @Override
-    protected PostgreSQLInputConnection newConnection(PluginTask task) throws SQLException
+    protected RedshiftInputConnection newConnection(PluginTask task) throws SQLException
     {
         RedshiftPluginTask t = (RedshiftPluginTask) task;
+        return newConnection(t, t.getHost(), t.getPort(), t.getDatabase(), t.getSchema());
+    }
+
+    @Override
+    protected boolean supportsTargets()
+    {
+        return true;
+    }
 
+    @Override
+    protected RedshiftInputConnection newConnection(PluginTask task, JdbcTarget target) throws SQLException
+    {
+        RedshiftPluginTask t = (RedshiftPluginTask) task;
+        return newConnection(t, target.getHost().orElse(t.getHost()), target.getPort().orElse(t.getPort()),
+                target.getDatabase().orElse(t.getDatabase()), target.getSchema().orElse(t.getSchema()));
+    }
+
+    private RedshiftInputConnection newConnection(RedshiftPluginTask t, String host, int port,
+            String database, String schema) throws SQLException
+    {
         String url = String.format("jdbc:postgresql://%s:%d/%s",
-                t.getHost(), t.getPort(), t.getDatabase());
+                host, port, database);
 
         Properties props = new Properties();
         props.setProperty("user", t.getUser());
@@ -88,18 +121,71 @@ public class RedshiftInputPlugin
         props.putAll(t.getOptions());
         logConnectionProperties(url, props);
 
-        Connection con = driver.connect(url, props);
+        Connection con = connect(t, url, props, () -> driver.connect(url, props));
         try {
-            PostgreSQLInputConnection c = new PostgreSQLInputConnection(con, t.getSchema(), t.getStatementTimeoutMillis());
+            RedshiftInputConnection c = new RedshiftInputConnection(con, schema, t.getStatementTimeoutMillis());
             con = null;
             return c;
         } finally {
             if (con != null) {
-                con.close();
+                JdbcConnectionLimiter.close(con);
             }
         }
     }
 
+    @Override
+    protected List<JdbcPartition> buildPartitions(JdbcInputConnection con, PluginTask task, JdbcSchema querySchema,
+            String partitionType, int partitionCount) throws SQLException
+    {
+        if (partitionType.equals("slice")) {
+            return buildSlicePartitions((RedshiftInputConnection) con, task, partitionCount);
+        }
+        return super.buildPartitions(con, task, querySchema, partitionType, partitionCount);
+    }
+
+    // Each task reads the rows stored in a disjoint subset of slices. Rows are filtered on the
+    // compute nodes, so that the leader node materializes only the rows of the task for its cursor.
+    // partitionCount is already multiplied by the partitions that a task reads by fetch_connections
+    // or partition_chunks.
+    private List<JdbcPartition> buildSlicePartitions(RedshiftInputConnection con, PluginTask task, int partitionCount)
+            throws SQLException
+    {
+        if (!task.getTable().isPresent()) {
+            throw new ConfigException("table option is required if partition_type is 'slice'");
+        }
+        if (task.getPartitionBy().isPresent()) {
+            throw new ConfigException("partition_by option must not be set if partition_type is 'slice'");
+        }
+
+        Optional<String> distStyle = con.getDistStyle(task.getTable().get());
+        if (!distStyle.isPresent()) {
+            logger.info("Table '{}' is empty or not found in svv_table_info.", task.getTable().get());
+            return Collections.emptyList();
+        }
+        if (distStyle.get().toUpperCase(Locale.ENGLISH).startsWith("ALL")) {
+            // all rows are stored in a slice of every node
+            logger.info("Table '{}' can't be split by slices because its diststyle is {}.", task.getTable().get(), distStyle.get());
+            return Collections.emptyList();
+        }
+
+        int sliceCount = con.getSliceCount();
+        // each slice is a partition unless partition_count is set
+        int count = task.getPartitionCount().isPresent() ? Math.min(partitionCount, sliceCount) : sliceCount;
+        logger.info("Table '{}' has diststyle {}. Splitting {} slices into {} partitions.", task.getTable().get(), distStyle.get(), sliceCount, count);
+        return buildSliceConditions(count);
+    }
+
+    // slice numbers are 0 to the number of slices - 1
+    static List<JdbcPartition> buildSliceConditions(int count)
+    {
+        final ArrayList<JdbcPartition> partitions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String condition = String.format(Locale.ENGLISH, "MOD(SLICE_NUM(), %d) = %d", count, i);
+            partitions.add(new JdbcPartition(condition, Collections.<JdbcLiteral>emptyList()));
+        }
+        return Collections.unmodifiableList(partitions);
+    }
+
     @Override
     protected ColumnGetterFactory newColumnGetterFactory(final PageBuilder pageBuilder, final ZoneId dateTimeZone)
     {
@@ -0,0 +1,27 @@
+package org.embulk.input.redshift;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.embulk.input.jdbc.JdbcPartition;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RedshiftSlicePartitionTest
+{
+    @Test
+    public void testConditions()
+    {
+        List<JdbcPartition> partitions = RedshiftInputPlugin.buildSliceConditions(3);
+        assertThat(partitions.size(), is(3));
+        assertThat(partitions.get(0).getCondition(), is(Optional.of("MOD(SLICE_NUM(), 3) = 0")));
+        assertThat(partitions.get(1).getCondition(), is(Optional.of("MOD(SLICE_NUM(), 3) = 1")));
+        assertThat(partitions.get(2).getCondition(), is(Optional.of("MOD(SLICE_NUM(), 3) = 2")));
+        for (JdbcPartition partition : partitions) {
+            assertThat(partition.getParameters().isEmpty(), is(true));
+            assertThat(partition.getTablePartition().isPresent(), is(false));
+        }
+    }
+}
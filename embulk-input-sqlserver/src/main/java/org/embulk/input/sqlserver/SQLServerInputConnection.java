@@ -1,11 +1,23 @@
 package org.embulk.input.sqlserver;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
 import org.embulk.input.jdbc.JdbcInputConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class SQLServerInputConnection extends JdbcInputConnection
 {
+    private static final Logger logger = LoggerFactory.getLogger(SQLServerInputConnection.class);
+
     private String transactionIsolationLevel;
 
     public SQLServerInputConnection(Connection connection, String schemaName) throws SQLException
@@ -28,15 +40,164 @@ public class SQLServerInputConnection extends JdbcInputConnection
 
     @Override
     protected String buildTableName(String tableName)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(buildObjectName(tableName));
+        if (transactionIsolationLevel != null) {
+            sb.append(" with (" + transactionIsolationLevel + ")");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public Optional<String> buildQuantileSampleQuery(String tableName, Optional<String> whereCondition,
+            String columnName, int partitionCount, double samplePercent) throws SQLException
+    {
+        // SYSTEM reads random pages of the table instead of all pages
+        String from = String.format(Locale.ENGLISH, "%s TABLESAMPLE SYSTEM (%.6f PERCENT)", buildTableName(tableName), samplePercent);
+        return Optional.of(buildQuantileQueryFrom(from, whereCondition, columnName, partitionCount));
+    }
+
+    @Override
+    public List<Long> estimatePartitionBounds(String tableName, String columnName,
+            int partitionCount) throws SQLException
+    {
+        String objectName = buildObjectName(tableName);
+
+        // statistics whose leading column is the column
+        String sql = "SELECT TOP 1 s.name FROM sys.stats s"
+            + " JOIN sys.stats_columns sc ON sc.object_id = s.object_id AND sc.stats_id = s.stats_id AND sc.stats_column_id = 1"
+            + " JOIN sys.columns c ON c.object_id = sc.object_id AND c.column_id = sc.column_id"
+            + " WHERE s.object_id = OBJECT_ID(?) AND c.name = ?"
+            + " ORDER BY s.stats_id";
+        logger.info("SQL: " + sql);
+        String statsName;
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, objectName);
+            stmt.setString(2, columnName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return Collections.emptyList();
+                }
+                statsName = rs.getString(1);
+            }
+        }
+
+        // each step has the number of rows equal to RANGE_HI_KEY and the number of rows between
+        // the previous RANGE_HI_KEY and RANGE_HI_KEY.
+        String dbcc = "DBCC SHOW_STATISTICS ('" + objectName.replace("'", "''") + "', "
+            + quoteIdentifierString(statsName) + ") WITH HISTOGRAM";
+        logger.info("SQL: " + dbcc);
+        final ArrayList<Long> values = new ArrayList<>();
+        final ArrayList<Double> rows = new ArrayList<>();
+        double totalRows = 0;
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery(dbcc)) {
+            while (rs.next()) {
+                long highKey = rs.getLong("RANGE_HI_KEY");
+                if (rs.wasNull()) {
+                    continue;
+                }
+                totalRows += rs.getDouble("RANGE_ROWS") + rs.getDouble("EQ_ROWS");
+                values.add(highKey + 1);
+                rows.add(totalRows);
+            }
+        } catch (SQLException ex) {
+            logger.info("Statistics are not available: {}", ex.getMessage());
+            return Collections.emptyList();
+        }
+        if (totalRows <= 0) {
+            // the statistics were taken when the table was empty
+            logger.info("Statistics '{}' have no rows", statsName);
+            return Collections.emptyList();
+        }
+
+        final ArrayList<Double> fractions = new ArrayList<>();
+        for (Double r : rows) {
+            fractions.add(r / totalRows);
+        }
+        return pickPartitionBounds(values, fractions, partitionCount);
+    }
+
+    @Override
+    public Optional<Long> estimateRowCount(String tableName) throws SQLException
+    {
+        // rows of the heap (index_id 0) or the clustered index (index_id 1)
+        String sql = "SELECT SUM(rows) FROM sys.partitions WHERE object_id = OBJECT_ID(?) AND index_id IN (0, 1)";
+        logger.info("SQL: " + sql);
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, buildObjectName(tableName));
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return Optional.empty();
+                }
+                long rows = rs.getLong(1);
+                return rs.wasNull() ? Optional.<Long>empty() : Optional.of(rows);
+            }
+        }
+    }
+
+    // Returns conditions to read each partition of a table partitioned by a partition scheme.
+    // $PARTITION lets the optimizer eliminate the other partitions.
+    public List<String> getPartitionFunctionConditions(String tableName) throws SQLException
+    {
+        // partition scheme of the heap (index_id 0) or the clustered index (index_id 1)
+        String sql = "SELECT pf.name, c.name, p.partition_number FROM sys.indexes i"
+            + " JOIN sys.partition_schemes ps ON ps.data_space_id = i.data_space_id"
+            + " JOIN sys.partition_functions pf ON pf.function_id = ps.function_id"
+            + " JOIN sys.index_columns ic ON ic.object_id = i.object_id AND ic.index_id = i.index_id AND ic.partition_ordinal = 1"
+            + " JOIN sys.columns c ON c.object_id = ic.object_id AND c.column_id = ic.column_id"
+            + " JOIN sys.partitions p ON p.object_id = i.object_id AND p.index_id = i.index_id"
+            + " WHERE i.object_id = OBJECT_ID(?) AND i.index_id IN (0, 1)"
+            + " ORDER BY p.partition_number";
+        logger.info("SQL: " + sql);
+        final ArrayList<String> conditions = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, buildObjectName(tableName));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    conditions.add(String.format(Locale.ENGLISH, "$PARTITION.%s(%s) = %d",
+                                quoteIdentifierString(rs.getString(1)), quoteIdentifierString(rs.getString(2)), rs.getInt(3)));
+                }
+            }
+        }
+        return Collections.unmodifiableList(conditions);
+    }
+
+    // Requires ALLOW_SNAPSHOT_ISOLATION ON of the database.
+    public void setSnapshotIsolation() throws SQLException
+    {
+        executeUpdate("SET TRANSACTION ISOLATION LEVEL SNAPSHOT");
+    }
+
+    private String buildObjectName(String tableName)
     {
         StringBuilder sb = new StringBuilder();
         if (schemaName != null) {
             sb.append(quoteIdentifierString(schemaName)).append(".");
         }
         sb.append(quoteIdentifierString(tableName));
-        if (transactionIsolationLevel != null) {
-            sb.append(" with (" + transactionIsolationLevel + ")");
+        return sb.toString();
+    }
+
+    @Override
+    protected String buildKeysetQuery(String rawQuery, Optional<String> keyCondition, String orderBy, int limit)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("SELECT TOP ").append(limit).append(" * FROM (").append(rawQuery).append(") embulk_keyset_");
+        if (keyCondition.isPresent()) {
+            sb.append(" WHERE ").append(keyCondition.get());
         }
+        sb.append(" ORDER BY ").append(orderBy);
         return sb.toString();
     }
+
+    @Override
+    public String buildHashPartitionCondition(String columnName,
+            int partitionCount, int partitionIndex) throws SQLException
+    {
+        // CHECKSUM returns int. It's converted to bigint because ABS(-2147483648) overflows.
+        return String.format(Locale.ENGLISH, "ABS(CAST(CHECKSUM(%s) AS bigint)) %% %d = %d",
+                quoteIdentifierString(columnName), partitionCount, partitionIndex);
+    }
 }
@@ -4,13 +4,20 @@ import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.SQLException;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 import java.util.Optional;
 import javax.validation.constraints.Size;
 
 import org.embulk.config.ConfigException;
 import org.embulk.input.jdbc.AbstractJdbcInputPlugin;
+import org.embulk.input.jdbc.JdbcConnectionLimiter;
 import org.embulk.input.jdbc.JdbcInputConnection;
+import org.embulk.input.jdbc.JdbcLiteral;
+import org.embulk.input.jdbc.JdbcPartition;
+import org.embulk.input.jdbc.JdbcSchema;
 import org.embulk.input.jdbc.getter.ColumnGetterFactory;
 import org.embulk.input.sqlserver.SQLServerInputConnection;
 import org.embulk.input.sqlserver.getter.SQLServerColumnGetterFactory;
@@ -79,6 +86,10 @@ public class SQLServerInputPlugin
         @ConfigDefault("null")
         public Optional<String> getTransactionIsolationLevel();
 
+        @Config("snapshot_isolation")
+        @ConfigDefault("false")
+        public boolean getSnapshotIsolation();
+
         @Config("application_name")
         @ConfigDefault("\"embulk-input-sqlserver\"")
         @Size(max = 128)
@@ -118,6 +129,10 @@ public class SQLServerInputPlugin
     {
         SQLServerPluginTask sqlServerTask = (SQLServerPluginTask) task;
 
+        if (sqlServerTask.getSnapshotIsolation() && sqlServerTask.getTransactionIsolationLevel().isPresent()) {
+            throw new ConfigException("snapshot_isolation can't be used with transaction_isolation_level");
+        }
+
         Driver driver;
         if (sqlServerTask.getDriverPath().isPresent()) {
             addDriverJarToClasspath(sqlServerTask.getDriverPath().get());
@@ -153,22 +168,54 @@ public class SQLServerInputPlugin
         logConnectionProperties(urlAndProps.getUrl(), props);
 
         if (driver != null) {
-            Connection con = driver.connect(urlAndProps.getUrl(), props);
+            Connection con = connect(sqlServerTask, urlAndProps.getUrl(), props, () -> driver.connect(urlAndProps.getUrl(), props));
             try {
                 SQLServerInputConnection c = new SQLServerInputConnection(con, sqlServerTask.getSchema().orElse(null),
                         sqlServerTask.getTransactionIsolationLevel().orElse(null));
+                if (sqlServerTask.getSnapshotIsolation()) {
+                    c.setSnapshotIsolation();
+                }
                 con = null;
                 return c;
             }
             finally {
                 if (con != null) {
-                    con.close();
+                    JdbcConnectionLimiter.close(con);
                 }
             }
         }
         throw new ConfigException("Fail to create new connection");
     }
 
+    @Override
+    protected List<JdbcPartition> buildPartitions(JdbcInputConnection con, PluginTask task, JdbcSchema querySchema,
+            String partitionType, int partitionCount) throws SQLException
+    {
+        if (partitionType.equals("native")) {
+            return buildPartitionFunctionPartitions((SQLServerInputConnection) con, task);
+        }
+        return super.buildPartitions(con, task, querySchema, partitionType, partitionCount);
+    }
+
+    // SQL Server has no syntax to select a partition in FROM clause. Each partition of the
+    // partition scheme is read by a condition with $PARTITION instead.
+    private List<JdbcPartition> buildPartitionFunctionPartitions(SQLServerInputConnection con, PluginTask task)
+            throws SQLException
+    {
+        if (!task.getTable().isPresent()) {
+            throw new ConfigException("table option is required if partition_type is 'native'");
+        }
+        if (task.getPartitionBy().isPresent()) {
+            throw new ConfigException("partition_by option must not be set if partition_type is 'native'");
+        }
+
+        final ArrayList<JdbcPartition> partitions = new ArrayList<>();
+        for (String condition : con.getPartitionFunctionConditions(task.getTable().get())) {
+            partitions.add(new JdbcPartition(condition, Collections.<JdbcLiteral>emptyList()));
+        }
+        return Collections.unmodifiableList(partitions);
+    }
+
     @Override
     protected ColumnGetterFactory newColumnGetterFactory(final PageBuilder pageBuilder, final ZoneId dateTimeZone)
     {
@@ -0,0 +1,90 @@
+package org.embulk.input.sqlserver;
+
+import org.embulk.config.ConfigSource;
+import org.embulk.formatter.csv.CsvFormatterPlugin;
+import org.embulk.input.file.LocalFileInputPlugin;
+import org.embulk.output.file.LocalFileOutputPlugin;
+import org.embulk.parser.csv.CsvParserPlugin;
+import org.embulk.spi.FileInputPlugin;
+import org.embulk.spi.FileOutputPlugin;
+import org.embulk.spi.FormatterPlugin;
+import org.embulk.spi.InputPlugin;
+import org.embulk.spi.ParserPlugin;
+import org.embulk.test.EmbulkTests;
+import org.embulk.test.TestingEmbulk;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.file.Path;
+
+import static org.embulk.input.sqlserver.SQLServerTests.assertConfigException;
+import static org.embulk.input.sqlserver.SQLServerTests.execute;
+import static org.embulk.test.EmbulkTests.readSortedFile;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PartitionTest
+{
+    private static final String BASIC_RESOURCE_PATH = "/org/embulk/input/sqlserver/test/expect/partition/";
+
+    private static ConfigSource loadYamlResource(TestingEmbulk embulk, String fileName)
+    {
+        return embulk.loadYamlResource(BASIC_RESOURCE_PATH + fileName);
+    }
+
+    private static String readResource(String fileName)
+    {
+        return EmbulkTests.readResource(BASIC_RESOURCE_PATH + fileName);
+    }
+
+    @Rule
+    public TestingEmbulk embulk = TestingEmbulk.builder()
+            .registerPlugin(FileInputPlugin.class, "file", LocalFileInputPlugin.class)
+            .registerPlugin(ParserPlugin.class, "csv", CsvParserPlugin.class)
+            .registerPlugin(FormatterPlugin.class, "csv", CsvFormatterPlugin.class)
+            .registerPlugin(FileOutputPlugin.class, "file", LocalFileOutputPlugin.class)
+            .registerPlugin(InputPlugin.class, "sqlserver", SQLServerInputPlugin.class)
+            .build();
+
+    private ConfigSource baseConfig;
+
+    @Before
+    public void setup()
+    {
+        baseConfig = SQLServerTests.baseConfig();
+        execute(readResource("setup.sql"));
+    }
+
+    @Test
+    public void testNative() throws Exception
+    {
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "native.yml")), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testNativeWithSnapshotIsolation() throws Exception
+    {
+        execute("ALTER DATABASE CURRENT SET ALLOW_SNAPSHOT_ISOLATION ON");
+        Path out1 = embulk.createTempFile("csv");
+        embulk.runInput(baseConfig.merge(loadYamlResource(embulk, "native.yml")).set("snapshot_isolation", true), out1);
+        assertThat(readSortedFile(out1), is(readResource("expected.csv")));
+    }
+
+    @Test
+    public void testNativeWithPartitionBy() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "native.yml")).set("partition_by", "NUM"),
+                "partition_by option must not be set if partition_type is 'native'");
+    }
+
+    @Test
+    public void testNativeWithQuery() throws Exception
+    {
+        assertConfigException(embulk, baseConfig.merge(loadYamlResource(embulk, "native.yml")).remove("table")
+                .set("query", "SELECT * FROM PARTITIONED_LOAD"),
+                "table option is required if partition_type is 'native'");
+    }
+}
@@ -0,0 +1,188 @@
+package org.embulk.input.sqlserver;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SQLServerInputConnectionTest
+{
+    private final List<String> queries = new ArrayList<>();
+    private final List<Object> parameters = new ArrayList<>();
+
+    @Test
+    public void testPartitionFunctionConditions() throws Exception
+    {
+        SQLServerInputConnection con = new SQLServerInputConnection(newConnection(Arrays.asList(
+                        new Object[] { "pf_orders", "order_date", 1 },
+                        new Object[] { "pf_orders", "order_date", 2 },
+                        new Object[] { "pf_orders", "order_date", 3 })), null);
+
+        assertThat(con.getPartitionFunctionConditions("orders"), contains(
+                    "$PARTITION.\"pf_orders\"(\"order_date\") = 1",
+                    "$PARTITION.\"pf_orders\"(\"order_date\") = 2",
+                    "$PARTITION.\"pf_orders\"(\"order_date\") = 3"));
+        assertThat(queries.get(0), containsString("ORDER BY p.partition_number"));
+        assertThat(parameters, contains((Object) "\"orders\""));
+    }
+
+    @Test
+    public void testPartitionFunctionConditionsWithSchema() throws Exception
+    {
+        SQLServerInputConnection con = new SQLServerInputConnection(newConnection(Collections.singletonList(
+                        new Object[] { "pf", "id", 1 })), "sales");
+
+        assertThat(con.getPartitionFunctionConditions("orders"), contains("$PARTITION.\"pf\"(\"id\") = 1"));
+        assertThat(parameters, contains((Object) "\"sales\".\"orders\""));
+    }
+
+    @Test
+    public void testNotPartitionedTable() throws Exception
+    {
+        SQLServerInputConnection con = new SQLServerInputConnection(newConnection(Collections.<Object[]>emptyList()), null);
+
+        assertThat(con.getPartitionFunctionConditions("orders").isEmpty(), is(true));
+    }
+
+    @Test
+    public void testHistogram() throws Exception
+    {
+        SQLServerInputConnection con = new SQLServerInputConnection(newConnection(
+                    Collections.singletonList(new Object[] { "pk_orders" }),
+                    Arrays.asList(newStep(10L, 0.0, 1.0), newStep(20L, 9.0, 1.0), newStep(30L, 9.0, 1.0))), null);
+
+        assertThat(con.estimatePartitionBounds("orders", "id", 3), contains(21L, 31L));
+        assertThat(parameters, contains((Object) "\"orders\"", "id"));
+    }
+
+    @Test
+    public void testEmptyHistogram() throws Exception
+    {
+        // the statistics were taken when the table was empty
+        SQLServerInputConnection con = new SQLServerInputConnection(newConnection(
+                    Collections.singletonList(new Object[] { "pk_orders" }),
+                    Collections.singletonList(newStep(10L, 0.0, 0.0))), null);
+
+        assertThat(con.estimatePartitionBounds("orders", "id", 3).isEmpty(), is(true));
+    }
+
+    // a connection that returns the rows to any query
+    private Connection newConnection(List<Object[]> rows)
+    {
+        return newConnection(rows, Collections.<Map<String, Object>>emptyList());
+    }
+
+    // a connection that also returns the steps of a histogram to DBCC SHOW_STATISTICS
+    private Connection newConnection(List<Object[]> rows, List<Map<String, Object>> steps)
+    {
+        DatabaseMetaData metaData = proxy(DatabaseMetaData.class, (proxy, method, args) -> {
+            if (method.getName().equals("getIdentifierQuoteString")) {
+                return "\"";
+            }
+            return null;
+        });
+        return proxy(Connection.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "getMetaData":
+                return metaData;
+            case "prepareStatement":
+                queries.add((String) args[0]);
+                return newStatement(rows);
+            case "createStatement":
+                return proxy(Statement.class, (statement, statementMethod, statementArgs) -> {
+                    if (statementMethod.getName().equals("executeQuery")) {
+                        queries.add((String) statementArgs[0]);
+                        return newHistogram(steps.iterator());
+                    }
+                    return null;
+                });
+            default:
+                return null;
+            }
+        });
+    }
+
+    private PreparedStatement newStatement(List<Object[]> rows)
+    {
+        return proxy(PreparedStatement.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "setString":
+                parameters.add(args[1]);
+                return null;
+            case "executeQuery":
+                return newResultSet(rows.iterator());
+            default:
+                return null;
+            }
+        });
+    }
+
+    private static ResultSet newResultSet(Iterator<Object[]> rows)
+    {
+        Object[][] current = new Object[1][];
+        return proxy(ResultSet.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "next":
+                current[0] = rows.hasNext() ? rows.next() : null;
+                return current[0] != null;
+            case "getString":
+                return current[0][(Integer) args[0] - 1];
+            case "getInt":
+                return current[0][(Integer) args[0] - 1];
+            default:
+                return null;
+            }
+        });
+    }
+
+    private static Map<String, Object> newStep(long highKey, double rangeRows, double eqRows)
+    {
+        Map<String, Object> step = new HashMap<>();
+        step.put("RANGE_HI_KEY", highKey);
+        step.put("RANGE_ROWS", rangeRows);
+        step.put("EQ_ROWS", eqRows);
+        return step;
+    }
+
+    private static ResultSet newHistogram(Iterator<Map<String, Object>> steps)
+    {
+        List<Map<String, Object>> current = new ArrayList<>(Collections.singletonList(null));
+        return proxy(ResultSet.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "next":
+                current.set(0, steps.hasNext() ? steps.next() : null);
+                return current.get(0) != null;
+            case "getLong":
+            case "getDouble":
+                return current.get(0).get((String) args[0]);
+            case "wasNull":
+                return false;
+            default:
+                return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler)
+    {
+        return (T) Proxy.newProxyInstance(SQLServerInputConnectionTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+}
@@ -1,6 +1,9 @@
 package org.embulk.input.sqlserver;
 
 import static java.util.Locale.ENGLISH;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -11,6 +14,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
 import org.embulk.test.EmbulkTests;
 import org.embulk.test.TestingEmbulk;
@@ -31,6 +35,24 @@ public class SQLServerTests
         return EmbulkTests.config("EMBULK_INPUT_SQLSERVER_TEST_CONFIG");
     }
 
+    // Runs the input and asserts that it fails by ConfigException with the message
+    public static void assertConfigException(TestingEmbulk embulk, ConfigSource config, String message) throws Exception
+    {
+        Path out = embulk.createTempFile("csv");
+        try {
+            embulk.runInput(config, out);
+        } catch (Exception ex) {
+            for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+                if (cause instanceof ConfigException) {
+                    assertThat(cause.getMessage(), is(message));
+                    return;
+                }
+            }
+            throw ex;
+        }
+        fail("ConfigException was not thrown");
+    }
+
     public static void execute(String sql, String... options)
     {
         ConfigSource config = baseConfig();
@@ -0,0 +1,18 @@
+IF OBJECT_ID('PARTITIONED_LOAD') IS NOT NULL DROP TABLE PARTITIONED_LOAD
+IF EXISTS (SELECT * FROM sys.partition_schemes WHERE name = 'PS_LOAD') DROP PARTITION SCHEME PS_LOAD
+IF EXISTS (SELECT * FROM sys.partition_functions WHERE name = 'PF_LOAD') DROP PARTITION FUNCTION PF_LOAD
+
+CREATE PARTITION FUNCTION PF_LOAD (INT) AS RANGE RIGHT FOR VALUES (3, 5);
+CREATE PARTITION SCHEME PS_LOAD AS PARTITION PF_LOAD ALL TO ([PRIMARY]);
+CREATE TABLE PARTITIONED_LOAD (
+    NUM INT NOT NULL,
+    NOTE VARCHAR(8),
+    PRIMARY KEY CLUSTERED (NUM)
+) ON PS_LOAD (NUM);
+
+INSERT INTO PARTITIONED_LOAD (NUM, NOTE) VALUES (1, 'a');
+INSERT INTO PARTITIONED_LOAD (NUM, NOTE) VALUES (2, 'b');
+INSERT INTO PARTITIONED_LOAD (NUM, NOTE) VALUES (3, 'c');
+INSERT INTO PARTITIONED_LOAD (NUM, NOTE) VALUES (4, 'd');
+INSERT INTO PARTITIONED_LOAD (NUM, NOTE) VALUES (5, 'e');
+INSERT INTO PARTITIONED_LOAD (NUM, NOTE) VALUES (6, 'f');